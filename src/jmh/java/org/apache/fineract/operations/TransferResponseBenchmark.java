@@ -0,0 +1,92 @@
+package org.apache.fineract.operations;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.mifos.connector.common.channel.dto.PhErrorDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the transfers per second mapped to [TransferResponse] by the former json round-trip through the
+ * [ObjectMapper] with the direct mapping of [TransferResponse.from], on a status check sized page where a tenth
+ * of the transfers carry an error, half of them stored as escaped json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransferResponseBenchmark {
+
+    private static final int ROWS = 10000;
+
+    private static final String ERROR_INFORMATION = "{\"errorCode\":\"1001\",\"errorDescription\":\"Payee not found\"}";
+
+    private static final String ESCAPED_ERROR_INFORMATION = "{\\\"errorCode\\\":\\\"1002\\\",\\\"errorDescription\\\":\\\"Insufficient funds\\\"}";
+
+    private ObjectMapper objectMapper;
+
+    private List<Transfer> transfers;
+
+    @Setup
+    public void setup() {
+        // like the mapper of spring boot, which ignores the entity fields the response does not have
+        objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        transfers = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Transfer transfer = new Transfer((long) i);
+            transfer.setId((long) i);
+            transfer.setTransactionId("txn-" + i);
+            transfer.setStartedAt(new Date());
+            transfer.setCompletedAt(new Date());
+            transfer.setStatus(i % 10 == 0 ? TransferStatus.FAILED : TransferStatus.COMPLETED);
+            transfer.setPayeePartyId("2424" + i);
+            transfer.setPayeePartyIdType("MSISDN");
+            transfer.setPayerPartyId("3535" + i);
+            transfer.setPayerPartyIdType("MSISDN");
+            transfer.setPayeeDfspId("payee");
+            transfer.setPayerDfspId("payer");
+            transfer.setAmount(BigDecimal.valueOf(i, 2));
+            transfer.setCurrency("USD");
+            transfer.setDirection("OUTGOING");
+            transfer.setBatchId("batch-" + (i / 100));
+            transfer.setClientCorrelationId("corr-" + i);
+            if (i % 10 == 0) {
+                transfer.setErrorInformation(i % 20 == 0 ? ERROR_INFORMATION : ESCAPED_ERROR_INFORMATION);
+            }
+            transfers.add(transfer);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<TransferResponse> jsonRoundTrip() throws Exception {
+        List<TransferResponse> transferResponseList = new ArrayList<>();
+        for (Transfer transfer : transfers) {
+            String json = transfer.getErrorInformation();
+            transfer.setErrorInformation(null);
+            TransferResponse transferResponse = objectMapper.readValue(objectMapper.writeValueAsString(transfer),
+                    TransferResponse.class);
+            transfer.setErrorInformation(json);
+            transferResponse.parseErrorInformation(json, objectMapper);
+            transferResponseList.add(transferResponse);
+        }
+        return transferResponseList;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<TransferResponse> directMapping() {
+        return TransferResponse.from(transfers, objectMapper.readerFor(PhErrorDTO.class));
+    }
+}
@@ -0,0 +1,93 @@
+package org.apache.fineract.utils;
+
+import org.apache.commons.io.output.NullWriter;
+import org.apache.fineract.operations.Transfer;
+import org.apache.fineract.operations.TransferStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the rows per second written by the reflective [CsvBeanWriter] mode of [CsvWriter]
+ * with the compiled [CsvRowWriter] mode, on the columns of the transfer export
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvWriterBenchmark {
+
+    private static final int ROWS = 10000;
+
+    private static final String[] COLUMNS = {"id", "workflowInstanceKey", "transactionId", "startedAt",
+            "completedAt", "status", "statusDetail", "payeeDfspId", "payeePartyId", "payeePartyIdType", "payeeFee",
+            "payeeFeeCurrency", "payeeQuoteCode", "payerDfspId", "payerPartyId", "payerPartyIdType", "payerFee",
+            "payerFeeCurrency", "payerQuoteCode", "amount", "currency", "direction", "errorInformation", "batchId",
+            "clientCorrelationId"};
+
+    private List<Transfer> transfers;
+
+    @Setup
+    public void setup() {
+        transfers = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Transfer transfer = new Transfer((long) i);
+            transfer.setId((long) i);
+            transfer.setTransactionId("txn-" + i);
+            transfer.setStartedAt(new Date());
+            transfer.setCompletedAt(new Date());
+            transfer.setStatus(TransferStatus.COMPLETED);
+            transfer.setPayeePartyId("2424" + i);
+            transfer.setPayeePartyIdType("MSISDN");
+            transfer.setPayerPartyId("3535" + i);
+            transfer.setPayerPartyIdType("MSISDN");
+            transfer.setPayeeDfspId("payee");
+            transfer.setPayerDfspId("payer");
+            transfer.setAmount(BigDecimal.valueOf(i, 2));
+            transfer.setCurrency("USD");
+            transfer.setDirection("OUTGOING");
+            transfer.setBatchId("batch-" + (i / 100));
+            transfer.setClientCorrelationId("corr-" + i);
+            transfer.setErrorInformation(i % 10 == 0 ? "{\"errorCode\":\"1001\",\"errorDescription\":\"a, \\\"quoted\\\" error\"}" : null);
+            transfers.add(transfer);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void beanWriter() throws Exception {
+        write(new CsvWriter.Builder<Transfer>()
+                .setPrintWriter(new PrintWriter(new NullWriter()))
+                .setNameMapping(COLUMNS)
+                .buildStreaming());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void compiledWriter() throws Exception {
+        write(new CsvWriter.Builder<Transfer>()
+                .setPrintWriter(new PrintWriter(new NullWriter()))
+                .setNameMapping(COLUMNS)
+                .setCompiledType(Transfer.class)
+                .buildStreaming());
+    }
+
+    private void write(CsvWriter<Transfer> writer) throws Exception {
+        writer.writeHeader();
+        for (Transfer transfer : transfers) {
+            writer.writeRow(transfer);
+        }
+        writer.close();
+    }
+}
@@ -21,7 +21,8 @@ package org.apache.fineract;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.fineract.core.service.AudienceVerifier;
 import org.apache.fineract.core.service.TenantAwareHeaderFilter;
-import org.apache.fineract.organisation.tenant.TenantServerConnectionRepository;
+import org.apache.fineract.core.service.TenantDatabaseUpgradeService;
+import org.apache.fineract.organisation.tenant.TenantServerConnectionRegistry;
 import org.mifos.connector.common.interceptor.annotation.EnableJsonWebSignature;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
@@ -102,9 +103,10 @@ public class ServerApplication {
     }
 
     @Bean
-    public FilterRegistrationBean tenantFilter(TenantServerConnectionRepository repository) {
+    public FilterRegistrationBean tenantFilter(TenantServerConnectionRegistry registry,
+                                               TenantDatabaseUpgradeService upgradeService) {
         FilterRegistrationBean registration = new FilterRegistrationBean();
-        registration.setFilter(new TenantAwareHeaderFilter(repository));
+        registration.setFilter(new TenantAwareHeaderFilter(registry, upgradeService));
         registration.addUrlPatterns("/*");
         registration.setName("tenantFilter");
         registration.setOrder(Integer.MIN_VALUE+1);
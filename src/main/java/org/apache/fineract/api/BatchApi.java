@@ -1,22 +1,23 @@
 package org.apache.fineract.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.fineract.config.PaymentModeConfiguration;
-import org.apache.fineract.file.FileTransferService;
+import org.apache.fineract.core.service.ThreadLocalContextUtil;
 import org.apache.fineract.operations.*;
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
 import org.apache.fineract.response.BatchAndSubBatchSummaryResponse;
 import org.apache.fineract.response.SubBatchSummary;
 import org.apache.fineract.service.BatchDbService;
 import org.apache.fineract.service.BatchService;
+import org.apache.fineract.service.BatchRefreshService;
 import org.apache.fineract.utils.DateUtil;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specifications;
 import org.springframework.util.ObjectUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -24,21 +25,16 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 
-import static org.apache.fineract.core.service.OperatorUtils.strip;
-
 @Slf4j
 @RestController
 @SecurityRequirement(name = "auth")
@@ -53,13 +49,6 @@ public class BatchApi {
     @Autowired
     private VariableRepository variableRepository;
 
-    @Autowired
-    @Qualifier("awsStorage")
-    private FileTransferService fileTransferService;
-
-    @Autowired
-    private PaymentModeConfiguration paymentModeConfig;
-
     @Autowired
     private DateUtil dateUtil;
 
@@ -69,11 +58,15 @@ public class BatchApi {
     @Autowired
     private BatchDbService batchDbService;
 
-    @Value("${application.bucket-name}")
-    private String bucketName;
     @Autowired
     private BatchService batchService;
 
+    @Autowired
+    private BatchRefreshService batchRefreshService;
+
+    @Autowired
+    private SpecificationQueryRepository specificationQueryRepository;
+
     private Sort getSortObject(String sort) {
         Sort.Direction sortDirection;
         String sortedBy;
@@ -120,17 +113,8 @@ public class BatchApi {
             startTo = dateUtil.getUTCFormat(startTo);
         }
         try {
-            BatchPaginatedResponse batchPaginatedResponse;
-
-            if (startFrom != null && startTo != null) {
-                batchPaginatedResponse = batchDbService.getBatch(startFrom, startTo, registeringInstituteId, payerFsp, batchId, pager);
-            } else if (startFrom != null) {
-                batchPaginatedResponse = batchDbService.getBatchDateFrom(startFrom, registeringInstituteId, payerFsp, batchId, pager);
-            } else if (startTo != null) {
-                batchPaginatedResponse = batchDbService.getBatchDateTo(startTo, registeringInstituteId, payerFsp, batchId, pager);
-            } else {
-                batchPaginatedResponse = batchDbService.getBatch(registeringInstituteId, payerFsp, batchId, pager);
-            }
+            BatchPaginatedResponse batchPaginatedResponse = batchDbService.getBatch(startFrom, startTo,
+                    registeringInstituteId, payerFsp, batchId, pager);
             httpServletResponse.setStatus(200);
             return batchPaginatedResponse;
         } catch (Exception e) {
@@ -202,19 +186,49 @@ public class BatchApi {
         return transfers;
     }
 
+    /**
+     * Returns the status of every transfer of the batch as a json object keyed by transaction id. The pairs are read
+     * by a two column query and written to the response as they come from the database cursor, so the memory used
+     * does not depend on the size of the batch.
+     * @param status only the transfers in this [TransferStatus] are returned when given
+     */
     @GetMapping("/batch/transactions")
-    public HashMap<String, String> batchTransactionDetails(@RequestParam String batchId) {
+    public ResponseEntity<StreamingResponseBody> batchTransactionDetails(@RequestParam String batchId,
+                                                                         @RequestParam(value = "status", required = false) String status) {
         Batch batch = batchRepository.findByBatchId(batchId);
-        if (batch != null) {
-            List<Transfer> transfers = transferRepository.findAllByBatchId(batch.getBatchId());
-            HashMap<String, String> status = new HashMap<>();
-            for (Transfer transfer : transfers) {
-                status.put(transfer.getTransactionId(), transfer.getStatus().name());
+        if (batch == null) {
+            return ResponseEntity.ok().build();
+        }
+        Specifications<Transfer> spec = TransferSpecs.match(Transfer_.batchId, batch.getBatchId());
+        if (status != null) {
+            try {
+                spec = spec.and(TransferSpecs.match(Transfer_.status, TransferStatus.valueOf(status.toUpperCase())));
+            } catch (IllegalArgumentException e) {
+                log.warn("unknown transfer status {}", status);
+                return ResponseEntity.badRequest().build();
             }
-            return status;
-        } else {
-            return null;
         }
+        Specifications<Transfer> filterSpec = spec;
+        TenantServerConnection tenant = ThreadLocalContextUtil.getTenant();
+
+        StreamingResponseBody body = out -> {
+            ThreadLocalContextUtil.setTenant(tenant);
+            try {
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+                generator.writeStartObject();
+                long rows = specificationQueryRepository.streamAttributes(Transfer.class, filterSpec, row -> {
+                    if (row[0] != null) {
+                        generator.writeStringField((String) row[0], row[1] == null ? null : ((TransferStatus) row[1]).name());
+                    }
+                }, "transactionId", "status");
+                generator.writeEndObject();
+                generator.flush();
+                log.debug("streamed the status of {} transfers of batch {}", rows, batchId);
+            } finally {
+                ThreadLocalContextUtil.clear();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
     @GetMapping("/batches/{batchId}")
     public <T>ResponseEntity<T> getBatchAndSubBatchSummary(@PathVariable String batchId,
@@ -230,6 +244,9 @@ public class BatchApi {
                                                                                       @RequestParam(value = "sortBy", required = false, defaultValue = "asc")
                                                                                           String sortBy){
 
+        if (offset < 0 || limit < 1) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
         if (associations!=null && associations.equals("all")) {
             PaymentBatchDetail response = batchService.getPaymentBathDetail(batchId, clientCorrelationId, offset, limit, orderBy, sortBy);
             if (ObjectUtils.isEmpty(response)) {
@@ -260,6 +277,9 @@ public class BatchApi {
                                                          @RequestParam(value = "sortBy", required = false, defaultValue = "asc")
                                                              String sortBy){
 
+        if (offset < 0 || limit < 1) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
         SubBatchSummary response = batchService.getPaymentSubBatchDetail(batchId, subBatchId, clientCorrelationId, offset, limit, orderBy, sortBy);
 
         if (ObjectUtils.isEmpty(response)) {
@@ -268,28 +288,6 @@ public class BatchApi {
 
         return (ResponseEntity<T>) new ResponseEntity<>(response, HttpStatus.OK);
     }
-    private void saveBatch(Batch batch,Long completed,Long ongoing,Long failed,
-                           Long totalTransfers,Long totalAmount,Long totalCompletedAmount,
-                           Long totalOngoingAmount,Long totalFailedAmount){
-        batch.setCompleted(completed);
-        batch.setFailed(failed);
-        batch.setResultGeneratedAt(new Date());
-        batch.setOngoing(ongoing);
-        batch.setTotalTransactions(totalTransfers);
-        batch.setTotalAmount(totalAmount);
-        batch.setCompletedAmount(totalCompletedAmount);
-        batch.setOngoingAmount(totalOngoingAmount);
-        batch.setFailedAmount(totalFailedAmount);
-        batch.setCompletedAt(new Date());
-        if(completed.equals(totalTransfers)){
-            batch.setStatus(BatchStatus.COMPLETED);
-        } else if(ongoing > 0){
-            batch.setStatus(BatchStatus.IN_PROGRESS);
-        } else if(failed>0){
-            batch.setStatus(BatchStatus.FAILED);
-        }
-        batchRepository.save(batch);
-    }
     private BatchDTO getBatchSummary(Batch batch,String modes) {
         Double batchCompletedPercent = 0.0;
         Double batchFailedPercent = 0.0;
@@ -310,11 +308,13 @@ public class BatchApi {
         response.setCreatedAt("" + batch.getStartedAt());
         response.setModes(modes);
         response.setPurpose("Unknown purpose");
+        response.setLastRefreshedAt(batch.getResultGeneratedAt());
         System.out.println("Batch details generated for batchId: " + response.getSuccessPercentage());
 
-        if (batch.getCompleted().longValue() == batch.getTotalTransactions().longValue()) {
+        if (batch.getTotalTransactions() > 0
+                && batch.getCompleted().longValue() == batch.getTotalTransactions().longValue()) {
             response.setStatus("COMPLETED");
-        } else if (batch.getOngoing() != 0 && batch.getCompletedAt() == null) {
+        } else if (batch.getTotalTransactions() == 0 || batch.getOngoing() != 0 && batch.getCompletedAt() == null) {
             response.setStatus("Pending");
         } else if (batch.getFailed().longValue() == batch.getFailed().longValue()) {
             response.setStatus("Failed");
@@ -324,102 +324,11 @@ public class BatchApi {
 
         return response;
     }
-    private void evaluateBatchSummary(Batch batch) {
-        Long completed = 0L;
-        Long failed = 0L;
-        Long total = 0L;
-        Long ongoing = 0L;
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        BigDecimal completedAmount = BigDecimal.ZERO;
-        BigDecimal ongoingAmount = BigDecimal.ZERO;
-        BigDecimal failedAmount = BigDecimal.ZERO;
-        List<Transfer> transfers = null;
-        if(batch.getSubBatchId()!=null){
-            transfers = transferRepository.findAllByBatchId(batch.getSubBatchId());
-        }else{
-            transfers = transferRepository.findAllByBatchId(batch.getBatchId());
-        }
-
-            for (Transfer transfer : transfers) {
-                Optional<Variable> variable = variableRepository.findByWorkflowInstanceKeyAndVariableName("paymentMode",
-                        transfer.getWorkflowInstanceKey());
-                if (variable.isPresent()) {
-                    // this will prevent 2x count of variables by eliminating data from transfers table
-                    if (paymentModeConfig.getByMode(strip(variable.get().getValue()))
-                            .getType().equalsIgnoreCase("BATCH")) {
-                        continue;
-                    }
-                }
-                total++;
-                BigDecimal amount = transfer.getAmount();
-                totalAmount = totalAmount.add(amount);
-                if (transfer.getStatus().equals(TransferStatus.COMPLETED)) {
-                    completed++;
-                    completedAmount = completedAmount.add(amount);
-                } else if (transfer.getStatus().equals(TransferStatus.FAILED)) {
-                    failed++;
-                    failedAmount = failedAmount.add(amount);
-                } else if (transfer.getStatus().equals(TransferStatus.IN_PROGRESS)) {
-                    if (transfer.getCompletedAt() == null || transfer.getCompletedAt().toString().isEmpty()) {
-                        ongoing++;
-                        ongoingAmount = ongoingAmount.add(amount);
-                    } else {
-                        completed++;
-                        completedAmount = completedAmount.add(amount);
-                    }
-                }
-            }
-        if (batch.getResult_file() == null || (batch.getResult_file() != null && batch.getResult_file().isEmpty())) {
-            batch.setResult_file(createDetailsFile(transfers));
-        }
-        saveBatch(batch, completed, ongoing, failed, total, totalAmount.longValue(), completedAmount.longValue(), ongoingAmount.longValue(), failedAmount.longValue());
-    }
-    private Batch getParentBatchSummary(List<Batch> batches){
-        StringBuilder modes = new StringBuilder();
-
-        Long subBatchFailed = 0L;
-        Long subBatchCompleted = 0L;
-        Long subBatchOngoing = 0L;
-        Long subBatchTotal = 0L;
-
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        BigDecimal completedAmount = BigDecimal.ZERO;
-        BigDecimal ongoingAmount = BigDecimal.ZERO;
-        BigDecimal failedAmount = BigDecimal.ZERO;
-        Batch parentBatch = null;
-
-        for (Batch bt : batches) {
-            if (bt.getPaymentMode() != null && !modes.toString().contains(bt.getPaymentMode())) {
-                if (!modes.toString().equals("")) {
-                    modes.append(",");
-                }
-                modes.append(bt.getPaymentMode());
-            }
-            if (bt.getSubBatchId() == null || bt.getSubBatchId().isEmpty()) {
-                parentBatch = bt;
-                continue;
-            }
-            if (bt.getFailed() != null) {
-                subBatchFailed += bt.getFailed();
-                failedAmount = failedAmount.add(BigDecimal.valueOf(bt.getFailedAmount()));
-            }
-            if (bt.getCompleted() != null) {
-                subBatchCompleted += bt.getCompleted();
-                completedAmount = completedAmount.add(BigDecimal.valueOf(bt.getCompletedAmount()));
-            }
-            if (bt.getOngoing() != null) {
-                subBatchOngoing += bt.getOngoing();
-                ongoingAmount = ongoingAmount.add(BigDecimal.valueOf(bt.getOngoingAmount()));
-            }
-            if (bt.getTotalTransactions() != null) {
-                subBatchTotal += bt.getTotalTransactions();
-                totalAmount = totalAmount.add(BigDecimal.valueOf(bt.getTotalAmount()));
-            }
-        }
-        saveBatch(parentBatch,subBatchCompleted,subBatchOngoing,subBatchFailed,subBatchTotal,
-                totalAmount.longValue(),completedAmount.longValue(),ongoingAmount.longValue(),failedAmount.longValue());
-        return  parentBatch;
-    }
+    /*
+     * serves the stored summary, which is kept up to date by the [BatchRefreshService], a batch whose summary was
+     * never computed is refreshed first unless another refresh is already at it. A batch without transfer is never
+     * reported as completed.
+     */
     private BatchDTO generateDetails(Batch batch){
 
         StringBuilder modes = new StringBuilder();
@@ -431,60 +340,21 @@ public class BatchApi {
                 }
                 modes.append(subBatch.getPaymentMode());
             }
-            evaluateBatchSummary(subBatch);
         }
-        Batch parentBatchSummary = null;
-        if(batches.size()==1){
-            parentBatchSummary = batch;
-        }else{
-            parentBatchSummary = getParentBatchSummary(batches);
+        Batch parentBatchSummary = batch;
+        if (batch.getResultGeneratedAt() == null) {
+            parentBatchSummary = batchRefreshService.refreshBatch(batch.getBatchId());
+            if (parentBatchSummary == null) {
+                // another refresh holds the batch, its summary is served as soon as that refresh saved it
+                BatchDTO response = generateBatchSummaryResponse(batch);
+                response.setModes(modes.toString());
+                return response;
+            }
         }
 
-
         return getBatchSummary(parentBatchSummary, modes.toString());
     }
 
-    private String createDetailsFile(List<Transfer> transfers) {
-        String CSV_SEPARATOR = ",";
-        File tempFile = new File(System.currentTimeMillis() + "_response.csv");
-        try (
-                FileWriter writer = new FileWriter(tempFile.getName());
-                BufferedWriter bw = new BufferedWriter(writer)) {
-            for (Transfer transfer : transfers) {
-                StringBuffer oneLine = new StringBuffer();
-                oneLine.append(transfer.getTransactionId());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getStatus().toString());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getPayeeDfspId());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getPayeePartyId());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getPayerDfspId());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getPayerPartyId());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getAmount().toString());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getCurrency());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getErrorInformation());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getStartedAt().toString());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(transfer.getCompletedAt().toString());
-                oneLine.append(CSV_SEPARATOR);
-                bw.write(oneLine.toString());
-                bw.newLine();
-            }
-            bw.flush();
-            return fileTransferService.uploadFile(tempFile, bucketName);
-        } catch (Exception e) {
-            System.err.format("Exception: %s%n", e);
-        }
-        return null;
-    }
-
     private BatchDTO generateBatchSummaryResponse(Batch batch) {
         double batchFailedPercent = 0;
         double batchCompletedPercent = 0;
@@ -514,8 +384,9 @@ public class BatchApi {
                 batch.getResult_file(), batch.getNote(),
                 decimalFormat.format(batchFailedPercent), decimalFormat.format(batchCompletedPercent),
                 batch.getRegisteringInstitutionId(), batch.getPayerFsp(), batch.getCorrelationId());
+        batchDTO.setLastRefreshedAt(batch.getResultGeneratedAt());
 
-        if (batch.getTotalTransactions() != null &&
+        if (batch.getTotalTransactions() != null && batch.getTotalTransactions() > 0 &&
                 batch.getCompleted() != null &&
                 batch.getTotalTransactions().longValue() == batch.getCompleted().longValue()) {
             batchDTO.setStatus("COMPLETED");
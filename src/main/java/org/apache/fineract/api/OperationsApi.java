@@ -3,11 +3,11 @@ package org.apache.fineract.api;
 
 import com.amazonaws.services.fms.model.InvalidInputException;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import org.apache.fineract.data.ErrorResponse;
 import org.apache.fineract.operations.BatchRepository;
 import org.apache.fineract.operations.BusinessKey;
 import org.apache.fineract.operations.BusinessKeyRepository;
 import org.apache.fineract.operations.Task;
-import org.apache.fineract.operations.TaskRepository;
 import org.apache.fineract.operations.TransactionRequest;
 import org.apache.fineract.operations.TransactionRequestDetail;
 import org.apache.fineract.operations.TransactionRequestRepository;
@@ -17,6 +17,7 @@ import org.apache.fineract.operations.TransferRepository;
 import org.apache.fineract.operations.TransferStatus;
 import org.apache.fineract.operations.Variable;
 import org.apache.fineract.operations.VariableRepository;
+import org.apache.fineract.service.WorkflowDetailService;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -26,6 +27,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -50,9 +52,6 @@ public class OperationsApi {
     @Autowired
     private BusinessKeyRepository businessKeyRepository;
 
-    @Autowired
-    private TaskRepository taskRepository;
-
     @Autowired
     private VariableRepository variableRepository;
 
@@ -68,12 +67,18 @@ public class OperationsApi {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private WorkflowDetailService workflowDetailService;
+
     @Value("${channel-connector.url}")
     private String channelConnectorUrl;
 
     @Value("${channel-connector.transfer-path}")
     private String channelConnectorTransferPath;
 
+    @Value("${operations.details.max-keys}")
+    private int detailsMaxKeys;
+
     @PostMapping("/transfer/{transactionId}/refund")
     public String refundTransfer(@RequestHeader("Platform-TenantId") String tenantId,
                                  @PathVariable("transactionId") String transactionId,
@@ -140,18 +145,43 @@ public class OperationsApi {
 
     @GetMapping("/transfer/{workflowInstanceKey}")
     public TransferDetail transferDetails(@PathVariable Long workflowInstanceKey) {
-        Transfer transfer = transferRepository.findFirstByWorkflowInstanceKey(workflowInstanceKey);
-        List<Task> tasks = taskRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey);
-        List<Variable> variables = variableRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey);
-        return new TransferDetail(transfer, tasks, variables);
+        return workflowDetailService.getTransferDetail(workflowInstanceKey);
     }
 
     @GetMapping("/transactionRequest/{workflowInstanceKey}")
     public TransactionRequestDetail transactionRequestDetails(@PathVariable Long workflowInstanceKey) {
-        TransactionRequest transactionRequest = transactionRequestRepository.findFirstByWorkflowInstanceKey(workflowInstanceKey);
-        List<Task> tasks = taskRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey);
-        List<Variable> variables = variableRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey);
-        return new TransactionRequestDetail(transactionRequest, tasks, variables);
+        return workflowDetailService.getTransactionRequestDetail(workflowInstanceKey);
+    }
+
+    /**
+     * Returns the details of the transfers of several workflow instances in one call, in the order of the keys.
+     * The keys without transfer are left out.
+     */
+    @GetMapping("/transfers/details")
+    public ResponseEntity<Object> transferDetailsList(@RequestParam("workflowInstanceKeys") List<Long> workflowInstanceKeys) {
+        if (workflowInstanceKeys.size() > detailsMaxKeys) {
+            return tooManyWorkflowInstanceKeys(workflowInstanceKeys.size());
+        }
+        return ResponseEntity.ok(workflowDetailService.getTransferDetails(workflowInstanceKeys));
+    }
+
+    /**
+     * Returns the details of the transaction requests of several workflow instances in one call, in the order of
+     * the keys. The keys without transaction request are left out.
+     */
+    @GetMapping("/transactionRequests/details")
+    public ResponseEntity<Object> transactionRequestDetailsList(@RequestParam("workflowInstanceKeys") List<Long> workflowInstanceKeys) {
+        if (workflowInstanceKeys.size() > detailsMaxKeys) {
+            return tooManyWorkflowInstanceKeys(workflowInstanceKeys.size());
+        }
+        return ResponseEntity.ok(workflowDetailService.getTransactionRequestDetails(workflowInstanceKeys));
+    }
+
+    private ResponseEntity<Object> tooManyWorkflowInstanceKeys(int count) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse.Builder()
+                .setErrorCode("" + HttpServletResponse.SC_BAD_REQUEST)
+                .setErrorDescription(count + " workflow instance keys requested, at most " + detailsMaxKeys + " are allowed")
+                .setDeveloperMessage("Split the workflowInstanceKeys into several calls").build());
     }
 
     @GetMapping("/variables")
@@ -159,22 +189,29 @@ public class OperationsApi {
             @RequestParam(value = "businessKey") String businessKey,
             @RequestParam(value = "businessKeyType") String businessKeyType
     ) {
-        return loadTransfers(businessKey, businessKeyType).stream()
-                .map(transfer -> variableRepository.findByWorkflowInstanceKeyOrderByTimestamp(transfer.getWorkflowInstanceKey()))
-                .collect(Collectors.toList());
+        return workflowDetailService.getVariables(workflowInstanceKeys(businessKey, businessKeyType));
     }
 
+    /**
+     * Returns the latest value of each variable of the transaction, only the [names] when they are given. Only the
+     * name and the value columns of the selected variables are read, so the large values of the other variables
+     * are never fetched.
+     */
     @GetMapping("/variables/{transactionId}")
-    public Map<String, String> variablesList( @PathVariable String transactionId) {
+    public Map<String, String> variablesList(@PathVariable String transactionId,
+                                             @RequestParam(value = "names", required = false) List<String> names) {
         Long workflowInstanceKey = transferRepository.findFirstByTransactionId(transactionId)
                 .map(Transfer::getWorkflowInstanceKey)
                 .orElseGet(() -> Long.valueOf(transactionRequestRepository.findFirstByTransactionId(transactionId)
                         .map(TransactionRequest::getWorkflowInstanceKey)
                         .orElseThrow(() -> new InvalidInputException("Transaction Id does not exist"))));
+        List<Object[]> rows = names == null || names.isEmpty()
+                ? variableRepository.findNamesAndValues(workflowInstanceKey)
+                : variableRepository.findNamesAndValues(workflowInstanceKey, names);
         HashMap<String, String> variables = new HashMap<>();
-        variableRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey).forEach(variable -> {
-            variables.put(variable.getName(), variable.getValue());
-        });
+        for (Object[] row : rows) {
+            variables.put((String) row[0], (String) row[1]);
+        }
         return variables;
     }
 
@@ -183,16 +220,15 @@ public class OperationsApi {
             @RequestParam(value = "businessKey") String businessKey,
             @RequestParam(value = "businessKeyType") String businessKeyType
     ) {
-        return loadTransfers(businessKey, businessKeyType).stream()
-                .map(transfer -> taskRepository.findByWorkflowInstanceKeyOrderByTimestamp(transfer.getWorkflowInstanceKey()))
-                .collect(Collectors.toList());
+        return workflowDetailService.getTasks(workflowInstanceKeys(businessKey, businessKeyType));
     }
 
-    private List<BusinessKey> loadTransfers(@RequestParam("businessKey") String
-                                                    businessKey, @RequestParam("businessKeyType") String businessKeyType) {
-        List<BusinessKey> businessKeys = businessKeyRepository.findByBusinessKeyAndBusinessKeyType(businessKey, businessKeyType);
-        logger.debug("loaded {} transfer(s) for business key {} of type {}", businessKeys.size(), businessKey, businessKeyType);
-        return businessKeys;
+    private List<Long> workflowInstanceKeys(String businessKey, String businessKeyType) {
+        List<Long> workflowInstanceKeys = businessKeyRepository.findByBusinessKeyAndBusinessKeyType(businessKey, businessKeyType).stream()
+                .map(BusinessKey::getWorkflowInstanceKey)
+                .collect(Collectors.toList());
+        logger.debug("loaded {} transfer(s) for business key {} of type {}", workflowInstanceKeys.size(), businessKey, businessKeyType);
+        return workflowInstanceKeys;
     }
 
 }
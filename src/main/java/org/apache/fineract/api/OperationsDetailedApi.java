@@ -1,31 +1,56 @@
 package org.apache.fineract.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.fineract.core.service.ReadReplica;
+import org.apache.fineract.core.service.ThreadLocalContextUtil;
+import org.apache.fineract.data.ErrorCode;
 import org.apache.fineract.data.ErrorResponse;
 import org.apache.fineract.exception.WriteToCsvException;
 import org.apache.fineract.operations.*;
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.apache.fineract.service.ExportJobService;
+import org.apache.fineract.service.TransactionRequestExportService;
 import org.apache.fineract.utils.CsvUtility;
+import org.apache.fineract.utils.CsvWriter;
 import org.apache.fineract.utils.DateUtil;
+import org.mifos.connector.common.channel.dto.PhErrorDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specifications;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.apache.fineract.core.service.OperatorUtils.dateFormat;
 
@@ -50,8 +75,45 @@ public class OperationsDetailedApi {
     @Autowired
     private DateUtil dateUtil;
 
+    @Autowired
+    private SpecificationQueryRepository specificationQueryRepository;
+
+    @Autowired
+    private TransactionRequestExportService transactionRequestExportService;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    private static final String KEYSET_PAGINATION = "keyset";
+
+    private static final String EXPORT_FORMAT_NDJSON = "ndjson";
+
+    private static final String EXPORT_FORMAT_CSV = "csv";
+
+    private static final int EXPORT_ERROR_CACHE_SIZE = 1000;
+
+    private static final int ERROR_DESCRIPTION_LENGTH = 1000;
+
+    /*
+     * columns of the csv export, listed explicitly rather than reflected from [Transfer]
+     * so the fields added to the entity by weaving never end up in the file
+     */
+    private static final String[] TRANSFER_EXPORT_COLUMNS = {"id", "workflowInstanceKey", "transactionId", "startedAt",
+            "completedAt", "status", "statusDetail", "payeeDfspId", "payeePartyId", "payeePartyIdType", "payeeFee",
+            "payeeFeeCurrency", "payeeQuoteCode", "payerDfspId", "payerPartyId", "payerPartyIdType", "payerFee",
+            "payerFeeCurrency", "payerQuoteCode", "amount", "currency", "direction", "errorInformation", "batchId",
+            "clientCorrelationId"};
+
+
+    /**
+     * Lists the transfers, either by page number or, when [pagination] is "keyset" or an [after] cursor is passed,
+     * by seeking past the (startedAt, id) of the last row of the previous page. The keyset mode skips the count
+     * query unless [count] is true, and leaves out the transfers without startedAt since they have no position
+     * to seek past.
+     */
+    @ReadReplica
     @GetMapping("/transfers")
-    public Page<TransferResponse> transfers(
+    public ResponseEntity<Object> transfers(
             @RequestParam(value = "page", required = false, defaultValue = "0") Integer page,
             @RequestParam(value = "size", required = false, defaultValue = "1") Integer size,
             @RequestParam(value = "payerPartyId", required = false) String payerPartyId,
@@ -69,7 +131,176 @@ public class OperationsDetailedApi {
             @RequestParam(value = "partyId", required = false) String partyId,
             @RequestParam(value = "partyIdType", required = false) String partyIdType,
             @RequestParam(value = "clientCorrelationId", required = false) String clientCorrelationId,
-            @RequestParam(value = "sortedOrder", required = false, defaultValue = "DESC") String sortedOrder) {
+            @RequestParam(value = "sortedOrder", required = false, defaultValue = "DESC") String sortedOrder,
+            @RequestParam(value = "pagination", required = false, defaultValue = "offset") String pagination,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "count", required = false, defaultValue = "false") Boolean count) {
+        List<Specifications<Transfer>> specs = transferFilterSpecs(payerPartyId, payerDfspId, payeePartyId, payeeDfspId,
+                transactionId, status, amount, currency, startFrom, startTo, direction, partyId, partyIdType,
+                clientCorrelationId);
+
+        if (after != null || KEYSET_PAGINATION.equalsIgnoreCase(pagination)) {
+            if (sortedBy != null && !"startedAt".equals(sortedBy)) {
+                return keysetSortNotSupported(sortedBy);
+            }
+            if (size < 1) {
+                return invalidPageSize(size);
+            }
+            Sort.Direction sortDirection = Sort.Direction.fromString(sortedOrder);
+            Specifications<Transfer> filterSpecs = compileSpecs(specs);
+            filterSpecs = filterSpecs == null ? TransferSpecs.started() : filterSpecs.and(TransferSpecs.started());
+            Specifications<Transfer> seekSpecs = filterSpecs;
+            if (after != null) {
+                KeysetCursor cursor;
+                try {
+                    cursor = KeysetCursor.decode(after);
+                } catch (IllegalArgumentException e) {
+                    return invalidCursor(after);
+                }
+                seekSpecs = filterSpecs.and(TransferSpecs.after(cursor, sortDirection));
+            }
+            List<Transfer> transfers = specificationQueryRepository.findAll(Transfer.class, seekSpecs,
+                    Sort.by(sortDirection, "startedAt", "id"), size + 1);
+            String next = null;
+            if (transfers.size() > size) {
+                transfers = transfers.subList(0, size);
+                Transfer last = transfers.get(size - 1);
+                next = new KeysetCursor(last.getStartedAt(), last.getId()).encode();
+            }
+            Long totalElements = count ? transferRepository.count(filterSpecs) : null;
+            return ResponseEntity.ok(new KeysetPage<>(toTransferResponses(transfers), size, next, totalElements));
+        }
+
+        PageRequest pager;
+        if (sortedBy == null || "startedAt".equals(sortedBy)) {
+            pager = new PageRequest(page, size, new Sort(Sort.Direction.fromString(sortedOrder), "startedAt"));
+        } else {
+            pager = new PageRequest(page, size, new Sort(Sort.Direction.fromString(sortedOrder), sortedBy));
+        }
+
+        Page<Transfer> transferPage;
+        if (specs.size() > 0) {
+            Specifications<Transfer> compiledSpecs = specs.get(0);
+            for (int i = 1; i < specs.size(); i++) {
+                compiledSpecs = compiledSpecs.and(specs.get(i));
+            }
+            transferPage = transferRepository.findAll(compiledSpecs, pager);
+        } else {
+            transferPage = transferRepository.findAll(pager);
+        }
+
+        List<TransferResponse> transferResponseList = toTransferResponses(transferPage.getContent());
+
+        Page<TransferResponse> paginatedTransferResponse = new PageImpl<>(transferResponseList, transferPage.getPageable(), transferPage.getTotalPages());
+
+        return ResponseEntity.ok(paginatedTransferResponse);
+    }
+
+    /**
+     * Exports every transfer matching the filters, ordered by (startedAt, id), as newline delimited json or csv.
+     * The rows are streamed from a database cursor straight into the response so no page of the result is kept
+     * in memory and no count query is issued.
+     * @param format [ndjson] or [csv], defaults to [ndjson]
+     */
+    @GetMapping("/transfers/export")
+    public ResponseEntity<StreamingResponseBody> exportTransfers(
+            @RequestParam(value = "payerPartyId", required = false) String payerPartyId,
+            @RequestParam(value = "payerDfspId", required = false) String payerDfspId,
+            @RequestParam(value = "payeePartyId", required = false) String payeePartyId,
+            @RequestParam(value = "payeeDfspId", required = false) String payeeDfspId,
+            @RequestParam(value = "transactionId", required = false) String transactionId,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "amount", required = false) BigDecimal amount,
+            @RequestParam(value = "currency", required = false) String currency,
+            @RequestParam(value = "startFrom", required = false) String startFrom,
+            @RequestParam(value = "startTo", required = false) String startTo,
+            @RequestParam(value = "direction", required = false) String direction,
+            @RequestParam(value = "partyId", required = false) String partyId,
+            @RequestParam(value = "partyIdType", required = false) String partyIdType,
+            @RequestParam(value = "clientCorrelationId", required = false) String clientCorrelationId,
+            @RequestParam(value = "sortedOrder", required = false, defaultValue = "DESC") String sortedOrder,
+            @RequestParam(value = "format", required = false, defaultValue = EXPORT_FORMAT_NDJSON) String format) {
+        Specifications<Transfer> spec = compileSpecs(transferFilterSpecs(payerPartyId, payerDfspId, payeePartyId,
+                payeeDfspId, transactionId, status, amount, currency, startFrom, startTo, direction, partyId,
+                partyIdType, clientCorrelationId));
+        Sort sort = Sort.by(Sort.Direction.fromString(sortedOrder), "startedAt", "id");
+        boolean csv = EXPORT_FORMAT_CSV.equalsIgnoreCase(format);
+        TenantServerConnection tenant = ThreadLocalContextUtil.getTenant();
+
+        StreamingResponseBody body = out -> {
+            ThreadLocalContextUtil.setTenant(tenant);
+            try {
+                long rows = csv ? writeTransfersCsv(spec, sort, out) : writeTransfersNdjson(spec, sort, out);
+                logger.info("exported {} transfers as {}", rows, csv ? EXPORT_FORMAT_CSV : EXPORT_FORMAT_NDJSON);
+            } finally {
+                ThreadLocalContextUtil.clear();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=transfers." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+
+    private long writeTransfersNdjson(Specifications<Transfer> spec, Sort sort, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(TransferResponse.class);
+        ObjectReader errorInformationReader = objectMapper.readerFor(PhErrorDTO.class);
+        Map<String, PhErrorDTO> parsedErrorInformation = new LinkedHashMap<String, PhErrorDTO>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PhErrorDTO> eldest) {
+                return size() > EXPORT_ERROR_CACHE_SIZE;
+            }
+        };
+        long rows = specificationQueryRepository.stream(Transfer.class, spec, sort, transfer -> {
+            TransferResponse transferResponse = TransferResponse.from(transfer);
+            String json = transfer.getErrorInformation();
+            if (json != null) {
+                PhErrorDTO errorInformation = parsedErrorInformation.get(json);
+                if (errorInformation == null) {
+                    errorInformation = TransferResponse.readErrorInformation(json, errorInformationReader);
+                    parsedErrorInformation.put(json, errorInformation);
+                }
+                transferResponse.setErrorInformation(errorInformation);
+            }
+            out.write(writer.writeValueAsBytes(transferResponse));
+            out.write('\n');
+        });
+        out.flush();
+        return rows;
+    }
+
+    private long writeTransfersCsv(Specifications<Transfer> spec, Sort sort, OutputStream out) throws IOException {
+        try {
+            CsvWriter<Transfer> csvWriter = new CsvWriter.Builder<Transfer>()
+                    .setPrintWriter(new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))))
+                    .setNameMapping(TRANSFER_EXPORT_COLUMNS)
+                    .setCompiledType(Transfer.class)
+                    .buildStreaming();
+            csvWriter.writeHeader();
+            long rows = specificationQueryRepository.stream(Transfer.class, spec, sort, transfer -> {
+                try {
+                    csvWriter.writeRow(transfer);
+                } catch (WriteToCsvException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            });
+            csvWriter.close();
+            return rows;
+        } catch (WriteToCsvException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Builds the [Transfer] specifications for the filters supported by the transfers listing and export
+     */
+    private List<Specifications<Transfer>> transferFilterSpecs(String payerPartyId, String payerDfspId,
+                                                              String payeePartyId, String payeeDfspId,
+                                                              String transactionId, String status, BigDecimal amount,
+                                                              String currency, String startFrom, String startTo,
+                                                              String direction, String partyId, String partyIdType,
+                                                              String clientCorrelationId) {
         List<Specifications<Transfer>> specs = new ArrayList<>();
 
         if (payerPartyId != null) {
@@ -149,51 +380,19 @@ public class OperationsDetailedApi {
         } catch (Exception e) {
             logger.warn("failed to parse dates {} / {}", startFrom, startTo);
         }
+        return specs;
+    }
 
-        PageRequest pager;
-        if (sortedBy == null || "startedAt".equals(sortedBy)) {
-            pager = new PageRequest(page, size, new Sort(Sort.Direction.fromString(sortedOrder), "startedAt"));
-        } else {
-            pager = new PageRequest(page, size, new Sort(Sort.Direction.fromString(sortedOrder), sortedBy));
-        }
-
-        Page<Transfer> transferPage;
-        if (specs.size() > 0) {
-            Specifications<Transfer> compiledSpecs = specs.get(0);
-            for (int i = 1; i < specs.size(); i++) {
-                compiledSpecs = compiledSpecs.and(specs.get(i));
-            }
-            transferPage = transferRepository.findAll(compiledSpecs, pager);
-        } else {
-            transferPage = transferRepository.findAll(pager);
-        }
-
-        List<TransferResponse> transferResponseList = new ArrayList<>();
-        int i = 0;
-        for (Transfer transfer : transferPage.getContent()) {
-            TransferResponse transferResponse = null;
-            try {
-                String json = transfer.getErrorInformation();
-                transfer.setErrorInformation(null);
-                transferResponse = objectMapper.readValue(objectMapper.writeValueAsString(transfer),
-                        TransferResponse.class);
-                transferResponse.parseErrorInformation(json, objectMapper);
-                transferResponseList.add(transferResponse);
-            } catch (Exception e) {
-                logger.error("Error parsing errorInformation into DTO: {}", e.getMessage());
-                e.printStackTrace();
-                if (transferResponse != null) {
-                    transferResponseList.add(transferResponse);
-                }
-            }
-        }
-
-        Page<TransferResponse> paginatedTransferResponse = new PageImpl<>(transferResponseList, transferPage.getPageable(), transferPage.getTotalPages());
-
-        return paginatedTransferResponse;
+    /*
+     * Maps the [Transfer] entities into [TransferResponse], parsing the errorInformation json into DTO,
+     * @see [TransferResponse.from]
+     */
+    private List<TransferResponse> toTransferResponses(List<Transfer> transfers) {
+        return TransferResponse.from(transfers, objectMapper.readerFor(PhErrorDTO.class));
     }
 
     //payment status check api
+    @ReadReplica
     @PostMapping("/transfers")
     public Page<TransferResponse> transfersStatusCheck(
             @RequestHeader("Platform-TenantId") String tenantId,
@@ -228,29 +427,18 @@ public class OperationsDetailedApi {
         }
         Page<Transfer> transferPage;
         transferPage = executeTransferRequest(spec, specs, page, size, sortedOrder);
-        List<TransferResponse> transferResponseList = new ArrayList<>();
-        for (Transfer transfer : transferPage.getContent()) {
-            TransferResponse transferResponse = null;
-            try {
-                String json = transfer.getErrorInformation();
-                transfer.setErrorInformation(null);
-                transferResponse = objectMapper.readValue(objectMapper.writeValueAsString(transfer),
-                        TransferResponse.class);
-                transferResponse.parseErrorInformation(json, objectMapper);
-                transferResponseList.add(transferResponse);
-            } catch (Exception e) {
-                logger.error("Error parsing errorInformation into DTO: {}", e.getMessage());
-                if (transferResponse != null) {
-                    transferResponseList.add(transferResponse);
-                }
-            }
-        }
+        List<TransferResponse> transferResponseList = toTransferResponses(transferPage.getContent());
         Page<TransferResponse> paginatedTransferResponse = new PageImpl<>(transferResponseList, transferPage.getPageable(), transferPage.getTotalPages());
         return paginatedTransferResponse;
     }
 
+    /**
+     * Lists the transaction requests, supports the same keyset mode as [transfers], which also leaves out the
+     * transaction requests without startedAt
+     */
+    @ReadReplica
     @GetMapping("/transactionRequests")
-    public Page<TransactionRequest> transactionRequests(
+    public ResponseEntity<Object> transactionRequests(
             @RequestParam(value = "page", required = false, defaultValue = "0") Integer page,
             @RequestParam(value = "size", required = false, defaultValue = "20") Integer size,
             @RequestParam(value = "payerPartyId", required = false) String payerPartyId,
@@ -266,7 +454,10 @@ public class OperationsDetailedApi {
             @RequestParam(value = "direction", required = false) String direction,
             @RequestParam(value = "clientCorrelationId", required = false) String clientCorrelationId,
             @RequestParam(value = "sortedBy", required = false) String sortedBy,
-            @RequestParam(value = "sortedOrder", required = false, defaultValue = "DESC") String sortedOrder) {
+            @RequestParam(value = "sortedOrder", required = false, defaultValue = "DESC") String sortedOrder,
+            @RequestParam(value = "pagination", required = false, defaultValue = "offset") String pagination,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "count", required = false, defaultValue = "false") Boolean count) {
         List<Specifications<TransactionRequest>> specs = new ArrayList<>();
         if (payerPartyId != null) {
             specs.add(TransactionRequestSpecs.match(TransactionRequest_.payerPartyId, payerPartyId));
@@ -316,6 +507,38 @@ public class OperationsDetailedApi {
             logger.warn("failed to parse dates {} / {}", startFrom, startTo);
         }
 
+        if (after != null || KEYSET_PAGINATION.equalsIgnoreCase(pagination)) {
+            if (sortedBy != null && !"startedAt".equals(sortedBy)) {
+                return keysetSortNotSupported(sortedBy);
+            }
+            if (size < 1) {
+                return invalidPageSize(size);
+            }
+            Sort.Direction sortDirection = Sort.Direction.fromString(sortedOrder);
+            Specifications<TransactionRequest> filterSpecs = compileSpecs(specs);
+            filterSpecs = filterSpecs == null ? TransactionRequestSpecs.started() : filterSpecs.and(TransactionRequestSpecs.started());
+            Specifications<TransactionRequest> seekSpecs = filterSpecs;
+            if (after != null) {
+                KeysetCursor cursor;
+                try {
+                    cursor = KeysetCursor.decode(after);
+                } catch (IllegalArgumentException e) {
+                    return invalidCursor(after);
+                }
+                seekSpecs = filterSpecs.and(TransactionRequestSpecs.after(cursor, sortDirection));
+            }
+            List<TransactionRequest> transactionRequests = specificationQueryRepository.findAll(TransactionRequest.class,
+                    seekSpecs, Sort.by(sortDirection, "startedAt", "id"), size + 1);
+            String next = null;
+            if (transactionRequests.size() > size) {
+                transactionRequests = transactionRequests.subList(0, size);
+                TransactionRequest last = transactionRequests.get(size - 1);
+                next = new KeysetCursor(last.getStartedAt(), last.getId()).encode();
+            }
+            Long totalElements = count ? transactionRequestRepository.count(filterSpecs) : null;
+            return ResponseEntity.ok(new KeysetPage<>(transactionRequests, size, next, totalElements));
+        }
+
         PageRequest pager;
         if (sortedBy == null || "startedAt".equals(sortedBy)) {
             pager = new PageRequest(page, size, new Sort(Sort.Direction.valueOf(sortedOrder), "startedAt"));
@@ -328,22 +551,45 @@ public class OperationsDetailedApi {
             for (int i = 1; i < specs.size(); i++) {
                 compiledSpecs = compiledSpecs.and(specs.get(i));
             }
-            return transactionRequestRepository.findAll(compiledSpecs, pager);
+            return ResponseEntity.ok(transactionRequestRepository.findAll(compiledSpecs, pager));
         } else {
-            return transactionRequestRepository.findAll(pager);
+            return ResponseEntity.ok(transactionRequestRepository.findAll(pager));
         }
     }
 
+    private ResponseEntity<Object> keysetSortNotSupported(String sortedBy) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse.Builder()
+                .setErrorCode("" + HttpServletResponse.SC_BAD_REQUEST)
+                .setErrorDescription("sortedBy " + sortedBy + " not supported with keyset pagination")
+                .setDeveloperMessage("Keyset pagination is only supported on startedAt").build());
+    }
+
+    private ResponseEntity<Object> invalidPageSize(Integer size) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse.Builder()
+                .setErrorCode("" + HttpServletResponse.SC_BAD_REQUEST)
+                .setErrorDescription("Invalid size " + size)
+                .setDeveloperMessage("The size of a keyset page must be at least 1").build());
+    }
+
+    private ResponseEntity<Object> invalidCursor(String after) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse.Builder()
+                .setErrorCode("" + HttpServletResponse.SC_BAD_REQUEST)
+                .setErrorDescription("Invalid cursor " + after)
+                .setDeveloperMessage("Pass the [next] token of the previous page as the after parameter").build());
+    }
+
     /**
-     * Filter the [TransactionRequests] based on multiple type of ids
+     * Filter the [TransactionRequests] based on multiple type of ids. The filters of the body are combined with an
+     * or clause into a single query whose rows are streamed from a database cursor into the csv
      *
      * @param response    instance of HttpServletResponse
      * @param page        the count/number of page which we want to fetch
-     * @param size        the size of the single page defaults to [10000]
+     * @param size        the size of the single page defaults to [10000], 0 exports every matching row
      * @param sortedOrder the order of sorting [ASC] or [DESC], defaults to [DESC]
      * @param startFrom   use for filtering records after this date, format: "yyyy-MM-dd HH:mm:ss"
      * @param startTo     use for filtering records before this date
      * @param state       filter based on state of the transaction
+     * @param variables   names of the variables exported as extra columns, loaded in batches of rows
      */
     @PostMapping("/transactionRequests")
     public Map<String, String> filterTransactionRequests(
@@ -355,6 +601,7 @@ public class OperationsDetailedApi {
             @RequestParam(value = "startFrom", required = false) String startFrom,
             @RequestParam(value = "startTo", required = false) String startTo,
             @RequestParam(value = "state", required = false) String state,
+            @RequestParam(value = "variables", required = false) List<String> variables,
             @RequestBody Map<String, List<String>> body) {
 
         if (!command.equalsIgnoreCase("export")) {
@@ -364,6 +611,38 @@ public class OperationsDetailedApi {
                     .setDeveloperMessage("Possible supported command is " + command).build();
         }
 
+        Specifications<TransactionRequest> spec = transactionRequestExportSpec(startFrom, startTo, state, body);
+        if (spec == null) {
+            return emptyCsvResponse(response);
+        }
+        Sort sort = Sort.by(Sort.Direction.valueOf(sortedOrder), "startedAt", "id");
+        long rows;
+        try {
+            rows = transactionRequestExportService.writeCsv(spec, sort, page * size, size, variables,
+                    () -> CsvUtility.getCsvPrintWriter(response));
+            if (rows == 0) {
+                return emptyCsvResponse(response);
+            }
+        } catch (WriteToCsvException e) {
+            return csvErrorResponse(e);
+        } catch (IOException e) {
+            if (e.getCause() instanceof WriteToCsvException) {
+                return csvErrorResponse((WriteToCsvException) e.getCause());
+            }
+            logger.error("failed to export transaction requests", e);
+            return csvErrorResponse(new WriteToCsvException(ErrorCode.CSV_STREAM,
+                    "Unable to export transaction requests", e.getMessage()));
+        }
+        logger.info("exported {} transaction requests", rows);
+        return null;
+    }
+
+    /*
+     * Builds the specification of the transaction request exports: the filters of the body combined with an or
+     * clause, and with the state and dates. Returns null when the body has no usable filter.
+     */
+    private Specifications<TransactionRequest> transactionRequestExportSpec(String startFrom, String startTo,
+                                                                            String state, Map<String, List<String>> body) {
         List<String> filterByList = new ArrayList<>(body.keySet());
 
         List<Specifications<TransactionRequest>> specs = new ArrayList<>();
@@ -384,8 +663,7 @@ public class OperationsDetailedApi {
             logger.warn("failed to parse dates {} / {}", startFrom, startTo);
         }
 
-        Specifications<TransactionRequest> spec = null;
-        List<TransactionRequest> data = new ArrayList<>();
+        Specifications<TransactionRequest> filterSpec = null;
         for (String filterBy : filterByList) {
             List<String> ids = body.get(filterBy);
             if (ids.isEmpty()) {
@@ -399,27 +677,103 @@ public class OperationsDetailedApi {
                 logger.info("Unable to parse filter " + filterBy + " skipping");
                 continue;
             }
-            spec = getFilterSpecs(filter, ids);
-            Page<TransactionRequest> result = executeRequest(spec, specs, page, size, sortedOrder);
-            data.addAll(result.getContent());
-            logger.info("Result for " + filter + " : " + data);
+            Specifications<TransactionRequest> spec = getFilterSpecs(filter, ids);
+            filterSpec = filterSpec == null ? spec : filterSpec.or(spec);
         }
-        if (data.isEmpty()) {
-            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            return new ErrorResponse.Builder()
-                    .setErrorCode("" + HttpServletResponse.SC_NOT_FOUND)
-                    .setErrorDescription("Empty response")
-                    .setDeveloperMessage("Empty response").build();
-        }
-        try {
-            CsvUtility.writeToCsv(response, data);
-        } catch (WriteToCsvException e) {
-            return new ErrorResponse.Builder()
-                    .setErrorCode(e.getErrorCode())
-                    .setErrorDescription(e.getErrorDescription())
-                    .setDeveloperMessage(e.getDeveloperMessage()).build();
+        if (filterSpec == null) {
+            return null;
         }
-        return null;
+        // a single query for all the filters, a row matching several of them is returned once
+        return combineSpecs(filterSpec, specs);
+    }
+
+    /**
+     * Queues the csv export of every transaction request matching the filters, @see [filterTransactionRequests]
+     * for the filters. The export runs in the background and its file is kept by the file storage, poll the
+     * returned job with [GET /exportJobs/{jobId}] and download the file once it is COMPLETED.
+     * Answers 429 when the tenant already has its maximum of running exports.
+     */
+    @PostMapping("/transactionRequests/exportJobs")
+    public ResponseEntity<Object> submitTransactionRequestExport(
+            @RequestParam(value = "sortedOrder", required = false, defaultValue = "DESC") String sortedOrder,
+            @RequestParam(value = "startFrom", required = false) String startFrom,
+            @RequestParam(value = "startTo", required = false) String startTo,
+            @RequestParam(value = "state", required = false) String state,
+            @RequestParam(value = "variables", required = false) List<String> variables,
+            @RequestBody Map<String, List<String>> body) {
+        Specifications<TransactionRequest> spec = transactionRequestExportSpec(startFrom, startTo, state, body);
+        if (spec == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse.Builder()
+                    .setErrorCode("" + HttpServletResponse.SC_BAD_REQUEST)
+                    .setErrorDescription("No valid filter")
+                    .setDeveloperMessage("Pass at least one filter with values in the body").build());
+        }
+        Sort sort = Sort.by(Sort.Direction.valueOf(sortedOrder), "startedAt", "id");
+        ExportJob job = exportJobService.submitTransactionRequestExport(spec, sort, variables);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new ErrorResponse.Builder()
+                    .setErrorCode("" + HttpStatus.TOO_MANY_REQUESTS.value())
+                    .setErrorDescription("Too many export jobs")
+                    .setDeveloperMessage("Wait for the running export jobs to finish").build());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @GetMapping("/exportJobs/{jobId}")
+    public ResponseEntity<Object> exportJob(@PathVariable("jobId") String jobId) {
+        return exportJobService.findJob(jobId)
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .orElseGet(() -> exportJobNotFound(jobId));
+    }
+
+    /**
+     * Downloads the file of a COMPLETED export job
+     */
+    @GetMapping("/exportJobs/{jobId}/file")
+    public ResponseEntity<Object> exportJobFile(@PathVariable("jobId") String jobId) {
+        Optional<ExportJob> job = exportJobService.findJob(jobId);
+        if (!job.isPresent()) {
+            return exportJobNotFound(jobId);
+        }
+        if (job.get().getStatus() != ExportJobStatus.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse.Builder()
+                    .setErrorCode("" + HttpStatus.CONFLICT.value())
+                    .setErrorDescription("Export job " + jobId + " is " + job.get().getStatus())
+                    .setDeveloperMessage("Only the file of a COMPLETED export job can be downloaded").build());
+        }
+        InputStream content = exportJobService.openFile(job.get());
+        if (content == null) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse.Builder()
+                    .setErrorCode("" + HttpServletResponse.SC_INTERNAL_SERVER_ERROR)
+                    .setErrorDescription("Unable to read the file of export job " + jobId)
+                    .setDeveloperMessage("Unable to read the file of export job " + jobId).build());
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.get().getFileName())
+                .body(new InputStreamResource(content));
+    }
+
+    private ResponseEntity<Object> exportJobNotFound(String jobId) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse.Builder()
+                .setErrorCode("" + HttpServletResponse.SC_NOT_FOUND)
+                .setErrorDescription("Export job " + jobId + " not found")
+                .setDeveloperMessage("Export job " + jobId + " not found").build());
+    }
+
+    private Map<String, String> emptyCsvResponse(HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        return new ErrorResponse.Builder()
+                .setErrorCode("" + HttpServletResponse.SC_NOT_FOUND)
+                .setErrorDescription("Empty response")
+                .setDeveloperMessage("Empty response").build();
+    }
+
+    private Map<String, String> csvErrorResponse(WriteToCsvException e) {
+        return new ErrorResponse.Builder()
+                .setErrorCode(e.getErrorCode())
+                .setErrorDescription(e.getErrorDescription())
+                .setDeveloperMessage(e.getDeveloperMessage()).build();
     }
 
     /*
@@ -476,29 +830,6 @@ public class OperationsDetailedApi {
         }
     }
 
-    /*
-     * Executes the transactionRequest api request with specifications and returns the paged result
-     * @param baseSpec the base specification in which all the other spec needed to be merged
-     * @param extraSpecs the list of specification which is required to be merged in [baseSpec]
-     * @param page the page number we want to fetch
-     * @param size the size of single page or number of elements in single page
-     * @param sortedOrder the order of sorting to be applied ASC OR DESC
-     */
-    private Page<TransactionRequest> executeRequest(
-            Specifications<TransactionRequest> baseSpec, List<Specifications<TransactionRequest>> extraSpecs,
-            int page, int size, String sortedOrder) {
-        PageRequest pager = new PageRequest(page, size, new Sort(Sort.Direction.valueOf(sortedOrder), "startedAt"));
-        Page<TransactionRequest> result;
-        if (baseSpec == null) {
-            result = transactionRequestRepository.findAll(pager);
-            logger.info("Getting data without spec");
-        } else {
-            Specifications<TransactionRequest> combineSpecs = combineSpecs(baseSpec, extraSpecs);
-            result = transactionRequestRepository.findAll(combineSpecs, pager);
-        }
-        return result;
-    }
-
     private Page<Transfer> executeTransferRequest(
             Specifications<Transfer> baseSpec, List<Specifications<Transfer>> extraSpecs,
             int page, int size, String sortedOrder) {
@@ -514,6 +845,16 @@ public class OperationsDetailedApi {
         return result;
     }
 
+    /*
+     * Combines the list of specifications into one using and clause, returns null for an empty list
+     */
+    private <T> Specifications<T> compileSpecs(List<Specifications<T>> specs) {
+        if (specs.isEmpty()) {
+            return null;
+        }
+        return combineSpecs(specs.get(0), specs.subList(1, specs.size()));
+    }
+
     /*
      * Combines the multiple specifications into one using and clause
      * @param baseSpec the base specification in which all the other spec needed to be merged
@@ -529,14 +870,15 @@ public class OperationsDetailedApi {
     }
 
     /*
-     * Generates the exhaustive errorDescription list by prefixing and suffixing it with double quotes (")
+     * Normalizes the errorDescription list the way the materialized column is: without the surrounding
+     * double quotes (") and cut to the length of the column
      *
-     * Example: [ "AMS Local is disabled"] => [ "AMS Local is disabled", "\"AMS Local is disabled\""]
+     * Example: [ "\"AMS Local is disabled\""] => [ "AMS Local is disabled"]
      */
     private List<String> parseErrorDescription(List<String> description) {
-        List<String> errorDesc = new ArrayList<>(description);
+        List<String> errorDesc = new ArrayList<>(description.size());
         for (String s : description) {
-            errorDesc.add(String.format("\"%s\"", s));
+            errorDesc.add(StringUtils.left(StringUtils.strip(s, "\""), ERROR_DESCRIPTION_LENGTH));
         }
         return errorDesc;
     }
@@ -0,0 +1,95 @@
+package org.apache.fineract.config;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.apache.fineract.core.service.TenantAwareTaskDecorator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors for the work done off the request thread, also enables the scheduled tasks. Every task runs with the tenant and MDC of the thread which
+ * submitted it, @see [TenantAwareTaskDecorator], so the tasks can use the tenant aware repositories directly.
+ */
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    public static final String REPOSITORY_EXECUTOR = "repositoryTaskExecutor";
+
+    public static final String EXPORT_EXECUTOR = "exportTaskExecutor";
+
+    @Value("${async.repository.core-pool-size}")
+    private int repositoryCorePoolSize;
+
+    @Value("${async.repository.max-pool-size}")
+    private int repositoryMaxPoolSize;
+
+    @Value("${async.repository.queue-capacity}")
+    private int repositoryQueueCapacity;
+
+    @Value("${export.jobs.pool-size}")
+    private int exportPoolSize;
+
+    @Value("${export.jobs.queue-capacity}")
+    private int exportQueueCapacity;
+
+    @Bean
+    public TaskDecorator tenantAwareTaskDecorator() {
+        return new TenantAwareTaskDecorator();
+    }
+
+    /*
+     * spring boot only creates its default executor when no other one is defined, it is declared here the same way
+     * so the spring mvc async requests keep using it
+     */
+    @Lazy
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * bounded executor for the blocking repository calls which are run in parallel
+     */
+    @Bean(name = REPOSITORY_EXECUTOR)
+    public ThreadPoolTaskExecutor repositoryTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.corePoolSize(repositoryCorePoolSize)
+                .maxPoolSize(repositoryMaxPoolSize)
+                .queueCapacity(repositoryQueueCapacity)
+                .threadNamePrefix("repository-")
+                .build();
+    }
+
+    /**
+     * executor of the asynchronous export jobs, kept apart so long exports never take the threads of the
+     * repository calls
+     */
+    @Bean(name = EXPORT_EXECUTOR)
+    public ThreadPoolTaskExecutor exportTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.corePoolSize(exportPoolSize)
+                .maxPoolSize(exportPoolSize)
+                .queueCapacity(exportQueueCapacity)
+                .threadNamePrefix("export-")
+                .build();
+    }
+
+    @Bean
+    public MeterBinder exportTaskExecutorMetrics(@Qualifier(EXPORT_EXECUTOR) ThreadPoolTaskExecutor executor) {
+        return registry -> new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), EXPORT_EXECUTOR, Tags.empty())
+                .bindTo(registry);
+    }
+
+    @Bean
+    public MeterBinder repositoryTaskExecutorMetrics(@Qualifier(REPOSITORY_EXECUTOR) ThreadPoolTaskExecutor executor) {
+        return registry -> new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), REPOSITORY_EXECUTOR, Tags.empty())
+                .bindTo(registry);
+    }
+}
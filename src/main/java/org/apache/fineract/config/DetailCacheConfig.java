@@ -0,0 +1,68 @@
+package org.apache.fineract.config;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.EhCache2Metrics;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.apache.fineract.core.service.ThreadLocalContextUtil;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Caches of the results which can not change anymore, the details of the workflows and the summaries of the batches
+ * which reached a terminal state. They live in their own ehcache manager so they do not depend on [caching.enabled],
+ * the entries are keyed by tenant, @see [tenantKey], and bounded in number with the least frequently used evicted first.
+ * Every entry is read again after [timeToLiveSeconds], however often it is hit, so a wrongly cached result does not
+ * outlive it.
+ * The hits and misses of every cache are published as the cache.gets metrics.
+ */
+@Configuration
+public class DetailCacheConfig {
+
+    public static final String DETAIL_CACHE_MANAGER = "detailCacheManager";
+
+    public static final String CACHE_TRANSFER_DETAIL = "transferDetail";
+
+    public static final String CACHE_TRANSACTION_REQUEST_DETAIL = "transactionRequestDetail";
+
+    public static final String CACHE_BATCH_SUMMARY = "batchSummary";
+
+    @Value("${detail-cache.max-entries}")
+    private int maxEntries;
+
+    @Value("${detail-cache.time-to-live-seconds}")
+    private long timeToLiveSeconds;
+
+    @Bean(name = DETAIL_CACHE_MANAGER, destroyMethod = "shutdown")
+    public CacheManager detailCacheManager() {
+        CacheManager cacheManager = new CacheManager(new net.sf.ehcache.config.Configuration().name(DETAIL_CACHE_MANAGER));
+        for (String name : new String[]{CACHE_TRANSFER_DETAIL, CACHE_TRANSACTION_REQUEST_DETAIL, CACHE_BATCH_SUMMARY}) {
+            CacheConfiguration cacheConfiguration = new CacheConfiguration(name, maxEntries)
+                    .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LFU)
+                    .timeToLiveSeconds(timeToLiveSeconds);
+            cacheManager.addCache(new Cache(cacheConfiguration));
+        }
+        return cacheManager;
+    }
+
+    @Bean
+    public MeterBinder detailCacheMetrics(@Qualifier(DETAIL_CACHE_MANAGER) CacheManager cacheManager) {
+        return registry -> {
+            for (String name : cacheManager.getCacheNames()) {
+                new EhCache2Metrics(cacheManager.getEhcache(name), Tags.empty()).bindTo(registry);
+            }
+        };
+    }
+
+    /**
+     * Key of the [key] in the caches, scoped to the tenant of the current thread
+     */
+    public static String tenantKey(Object key) {
+        return ThreadLocalContextUtil.getTenant().getSchemaName() + ':' + key;
+    }
+}
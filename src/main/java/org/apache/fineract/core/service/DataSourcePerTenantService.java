@@ -20,23 +20,42 @@ package org.apache.fineract.core.service;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.fineract.organisation.tenant.TenantServerConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
-import java.util.HashMap;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 @Service
 public class DataSourcePerTenantService implements DisposableBean {
 
+    private static final long DEFAULT_CONNECTION_KEY = 0;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private final Map<Long, DataSource> tenantToDataSourceMap = new HashMap<>();
+    private final ConcurrentMap<Long, TenantDataSource> tenantToDataSourceMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, TenantDataSource> tenantToReplicaDataSourceMap = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
 
     @Value("${fineract.datasource.core.port}")
     private int defaultPort;
@@ -62,56 +81,129 @@ public class DataSourcePerTenantService implements DisposableBean {
     @Value("${fineract.datasource.common.driverclass_name}")
     private String driverClass;
 
-    public DataSource retrieveDataSource() {
-        DataSource tenantDataSource;
+    @Value("${fineract.datasource.pool.max-size}")
+    private int defaultMaxPoolSize;
+
+    @Value("${fineract.datasource.pool.min-idle}")
+    private int defaultMinIdle;
+
+    @Value("${fineract.datasource.pool.evict-idle-after-ms}")
+    private long evictIdleAfterMs;
+
+    @Value("${fineract.datasource.replica.connection-timeout-ms}")
+    private long replicaConnectionTimeoutMs;
 
+    @Value("${fineract.datasource.replica.retry-after-ms}")
+    private long replicaRetryAfterMs;
+
+    private TenantServerConnection defaultConnection;
+
+    @PostConstruct
+    public void init() {
+        defaultConnection = new TenantServerConnection();
+        defaultConnection.setSchemaServer(defaultHostname);
+        defaultConnection.setSchemaServerPort(String.valueOf(defaultPort));
+        defaultConnection.setSchemaName(defaultSchema);
+        defaultConnection.setSchemaUsername(defaultUsername);
+        defaultConnection.setSchemaPassword(defaultPassword);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("tenant.datasources", tenantToDataSourceMap, Map::size)
+                    .description("number of open tenant connection pools")
+                    .register(registry);
+            Gauge.builder("tenant.replica.datasources", tenantToReplicaDataSourceMap, Map::size)
+                    .description("number of open tenant read replica connection pools")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Returns the data source of the tenant of the current thread, or of the tenants schema when no tenant is set.
+     * When the thread is marked with [ThreadLocalContextUtil.isReadReplica] and the tenant has a replica, the replica
+     * pool is returned instead, it falls back to the primary when the replica can not be reached.
+     * The lookup does not lock, the pool of a tenant is created on its first use.
+     */
+    public DataSource retrieveDataSource() {
         final TenantServerConnection tenant = ThreadLocalContextUtil.getTenant();
         if (tenant != null) {
-            synchronized (this.tenantToDataSourceMap) {
-                if (this.tenantToDataSourceMap.containsKey(tenant.getId())) {
-                    tenantDataSource = this.tenantToDataSourceMap.get(tenant.getId());
-                } else {
-                    tenantDataSource = createNewDataSourceFor(tenant);
-                    this.tenantToDataSourceMap.put(tenant.getId(), tenantDataSource);
-                }
-            }
-        } else {
-            synchronized (this.tenantToDataSourceMap) {
-                long defaultConnectionKey = 0;
-                if (this.tenantToDataSourceMap.containsKey(defaultConnectionKey)) {
-                    tenantDataSource = this.tenantToDataSourceMap.get(defaultConnectionKey);
-                } else {
-                    TenantServerConnection defaultConnection = new TenantServerConnection();
-                    defaultConnection.setSchemaServer(defaultHostname);
-                    defaultConnection.setSchemaServerPort(String.valueOf(defaultPort));
-                    defaultConnection.setSchemaName(defaultSchema);
-                    defaultConnection.setSchemaUsername(defaultUsername);
-                    defaultConnection.setSchemaPassword(defaultPassword);
-                    tenantDataSource = createNewDataSourceFor(defaultConnection);
-                    this.tenantToDataSourceMap.put(defaultConnectionKey, tenantDataSource);
+            if (ThreadLocalContextUtil.isReadReplica() && tenant.hasReplica()) {
+                TenantDataSource replica = dataSourceFor(tenantToReplicaDataSourceMap, tenant.getId(), tenant, true);
+                if (replica.isAvailable()) {
+                    return replica;
                 }
             }
+            return dataSourceFor(tenantToDataSourceMap, tenant.getId(), tenant, false);
+        }
+        return dataSourceFor(tenantToDataSourceMap, DEFAULT_CONNECTION_KEY, defaultConnection, false);
+    }
+
+    private TenantDataSource dataSourceFor(ConcurrentMap<Long, TenantDataSource> dataSources, Long key,
+                                           TenantServerConnection tenant, boolean replica) {
+        TenantDataSource dataSource = dataSources.get(key);
+        if (dataSource != null && !dataSource.closed) {
+            return dataSource;
         }
+        return dataSources.compute(key, (k, existing) ->
+                existing == null || existing.closed ? new TenantDataSource(k, tenant, replica) : existing);
+    }
+
+    /**
+     * Closes the pools of the tenants which did not ask for a connection for [evictIdleAfterMs] and have no
+     * connection in use, they are created again on the next request of the tenant
+     */
+    @Scheduled(fixedDelayString = "${fineract.datasource.pool.eviction-interval-ms}")
+    public void evictIdleDataSources() {
+        if (evictIdleAfterMs <= 0) {
+            return;
+        }
+        long idleSince = System.currentTimeMillis() - evictIdleAfterMs;
+        evictIdleDataSources(tenantToDataSourceMap, idleSince);
+        evictIdleDataSources(tenantToReplicaDataSourceMap, idleSince);
+    }
 
-        return tenantDataSource;
+    private void evictIdleDataSources(ConcurrentMap<Long, TenantDataSource> dataSources, long idleSince) {
+        for (Map.Entry<Long, TenantDataSource> entry : dataSources.entrySet()) {
+            if (entry.getKey() == DEFAULT_CONNECTION_KEY) {
+                continue;
+            }
+            TenantDataSource dataSource = entry.getValue();
+            if (dataSource.closeIfIdle(idleSince)) {
+                dataSources.remove(entry.getKey(), dataSource);
+                logger.info("Idle datasource closed: {}", dataSource.pool.getPoolName());
+            }
+        }
     }
 
-    private DataSource createNewDataSourceFor(TenantServerConnection tenant) {
+    private HikariDataSource createNewDataSourceFor(TenantServerConnection tenant, boolean replica) {
         HikariConfig config = new HikariConfig();
         config.setUsername(tenant.getSchemaUsername());
         config.setPassword(tenant.getSchemaPassword());
-        config.setJdbcUrl(createJdbcUrl(jdbcProtocol, jdbcSubprotocol, tenant.getSchemaServer(),
-                Integer.parseInt(tenant.getSchemaServerPort()), tenant.getSchemaName()));
+        if (replica) {
+            String port = tenant.getReplicaSchemaServerPort() != null ? tenant.getReplicaSchemaServerPort()
+                    : tenant.getSchemaServerPort();
+            config.setJdbcUrl(createJdbcUrl(jdbcProtocol, jdbcSubprotocol, tenant.getReplicaSchemaServer(),
+                    Integer.parseInt(port), tenant.getSchemaName()));
+            config.setReadOnly(true);
+            // a replica which is down should not hold the request for long before the primary is used
+            config.setInitializationFailTimeout(-1);
+        } else {
+            config.setJdbcUrl(createJdbcUrl(jdbcProtocol, jdbcSubprotocol, tenant.getSchemaServer(),
+                    Integer.parseInt(tenant.getSchemaServerPort()), tenant.getSchemaName()));
+        }
         config.setAutoCommit(false);
         config.setConnectionInitSql("SELECT 1");
         config.setValidationTimeout(30000);
         config.setConnectionTestQuery("SELECT 1");
-        config.setConnectionTimeout(30000);
+        config.setConnectionTimeout(replica ? replicaConnectionTimeoutMs : 30000);
         config.setDriverClassName(driverClass);
         config.setIdleTimeout(600000);
-        config.setMaximumPoolSize(20);
-        config.setMinimumIdle(5);
-        config.setPoolName(tenant.getSchemaName() + "Pool");
+        config.setMaximumPoolSize(tenant.getPoolMaxSize() != null ? tenant.getPoolMaxSize() : defaultMaxPoolSize);
+        config.setMinimumIdle(tenant.getPoolMinIdle() != null ? tenant.getPoolMinIdle() : defaultMinIdle);
+        config.setPoolName(tenant.getSchemaName() + (replica ? "ReplicaPool" : "Pool"));
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        }
         return new HikariDataSource(config);
     }
 
@@ -131,10 +223,86 @@ public class DataSourcePerTenantService implements DisposableBean {
 
     @Override
     public void destroy() {
-        for (Map.Entry<Long, DataSource> entry : this.tenantToDataSourceMap.entrySet()) {
-            HikariDataSource ds = (HikariDataSource) entry.getValue();
-            ds.close();
-            logger.info("Datasource closed: {}", ds.getPoolName());
+        for (TenantDataSource dataSource : this.tenantToReplicaDataSourceMap.values()) {
+            dataSource.pool.close();
+            logger.info("Datasource closed: {}", dataSource.pool.getPoolName());
+        }
+        for (TenantDataSource dataSource : this.tenantToDataSourceMap.values()) {
+            dataSource.pool.close();
+            logger.info("Datasource closed: {}", dataSource.pool.getPoolName());
+        }
+    }
+
+    /*
+     * Pool of one tenant, or of its read replica. A connection is only handed out while the pool is open, the eviction
+     * closes it under the write lock, so a caller still holding this instance after the eviction transparently gets
+     * a new pool. A replica which fails to hand out a connection is skipped for [replicaRetryAfterMs] and the
+     * connection is taken from the primary instead.
+     */
+    private class TenantDataSource extends AbstractDataSource {
+
+        private final Long key;
+        private final TenantServerConnection tenant;
+        private final boolean replica;
+        private final HikariDataSource pool;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile long unavailableUntil;
+        private volatile boolean closed;
+
+        private TenantDataSource(Long key, TenantServerConnection tenant, boolean replica) {
+            this.key = key;
+            this.tenant = tenant;
+            this.replica = replica;
+            this.pool = createNewDataSourceFor(tenant, replica);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return getConnection(null, null);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            lock.readLock().lock();
+            try {
+                if (!closed) {
+                    lastAccess = System.currentTimeMillis();
+                    return username == null ? pool.getConnection() : pool.getConnection(username, password);
+                }
+            } catch (SQLException e) {
+                if (!replica) {
+                    throw e;
+                }
+                unavailableUntil = System.currentTimeMillis() + replicaRetryAfterMs;
+                logger.warn("Read replica {} unavailable, falling back to primary: {}", pool.getPoolName(), e.getMessage());
+            } finally {
+                lock.readLock().unlock();
+            }
+            TenantDataSource dataSource = replica && isAvailable()
+                    ? dataSourceFor(tenantToReplicaDataSourceMap, key, tenant, true)
+                    : dataSourceFor(tenantToDataSourceMap, key, tenant, false);
+            return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+        }
+
+        private boolean isAvailable() {
+            return System.currentTimeMillis() >= unavailableUntil;
+        }
+
+        private boolean closeIfIdle(long idleSince) {
+            if (!lock.writeLock().tryLock()) {
+                return false;
+            }
+            try {
+                if (closed || lastAccess > idleSince || pool.getHikariPoolMXBean().getActiveConnections() > 0) {
+                    return false;
+                }
+                closed = true;
+                pool.close();
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.core.service;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets the read replica flag of [ThreadLocalContextUtil] around the methods annotated with [ReadReplica].
+ * It runs before the transaction advice so the connection of a transaction is already taken from the replica.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ReadReplicaAspect {
+
+    @Around("@annotation(org.apache.fineract.core.service.ReadReplica) || @within(org.apache.fineract.core.service.ReadReplica)")
+    public Object routeToReadReplica(ProceedingJoinPoint joinPoint) throws Throwable {
+        boolean previous = ThreadLocalContextUtil.isReadReplica();
+        ThreadLocalContextUtil.setReadReplica(true);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ThreadLocalContextUtil.setReadReplica(previous);
+        }
+    }
+}
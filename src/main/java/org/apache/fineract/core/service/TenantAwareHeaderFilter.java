@@ -19,7 +19,8 @@
 package org.apache.fineract.core.service;
 
 import org.apache.commons.lang3.time.StopWatch;
-import org.apache.fineract.organisation.tenant.TenantServerConnectionRepository;
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.apache.fineract.organisation.tenant.TenantServerConnectionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -39,10 +40,12 @@ public class TenantAwareHeaderFilter extends GenericFilterBean {
     private static final String TENANT_IDENTIFIER_REQUEST_PARAM = "tenantIdentifier";
     private static final String EXCLUDED_URL = "/oauth/token_key";
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private final TenantServerConnectionRepository repository;
+    private final TenantServerConnectionRegistry registry;
+    private final TenantDatabaseUpgradeService upgradeService;
 
-    public TenantAwareHeaderFilter(TenantServerConnectionRepository repository) {
-        this.repository = repository;
+    public TenantAwareHeaderFilter(TenantServerConnectionRegistry registry, TenantDatabaseUpgradeService upgradeService) {
+        this.registry = registry;
+        this.upgradeService = upgradeService;
     }
 
     @Override
@@ -65,7 +68,12 @@ public class TenantAwareHeaderFilter extends GenericFilterBean {
                             String.format("No tenant identifier found! Add request header: %s or request param: %s", TENANT_IDENTIFIER_REQUEST_HEADER, TENANT_IDENTIFIER_REQUEST_PARAM));
                 }
 
-                ThreadLocalContextUtil.setTenant(this.repository.findOneBySchemaName(tenantIdentifier));
+                TenantServerConnection tenant = this.registry.findOneBySchemaName(tenantIdentifier);
+                if (tenant == null) {
+                    throw new RuntimeException(String.format("Tenant %s not found!", tenantIdentifier));
+                }
+                upgradeService.ensureMigrated(tenant);
+                ThreadLocalContextUtil.setTenant(tenant);
             }
             chain.doFilter(request, res);
         } catch (Exception e) {
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.core.service;
+
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.Map;
+
+/**
+ * Runs the decorated task with the tenant, the read replica flag and the MDC of the thread which submitted it.
+ * The context of the executing thread is restored afterwards, so pooled threads never keep the tenant of a previous
+ * task and a task run by the caller itself leaves the caller's context untouched.
+ */
+public class TenantAwareTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        TenantServerConnection tenant = ThreadLocalContextUtil.getTenant();
+        boolean readReplica = ThreadLocalContextUtil.isReadReplica();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            TenantServerConnection previousTenant = ThreadLocalContextUtil.getTenant();
+            boolean previousReadReplica = ThreadLocalContextUtil.isReadReplica();
+            Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+            setContext(tenant, readReplica, mdc);
+            try {
+                runnable.run();
+            } finally {
+                setContext(previousTenant, previousReadReplica, previousMdc);
+            }
+        };
+    }
+
+    private static void setContext(TenantServerConnection tenant, boolean readReplica, Map<String, String> mdc) {
+        if (tenant == null) {
+            ThreadLocalContextUtil.clear();
+        } else {
+            ThreadLocalContextUtil.setTenant(tenant);
+        }
+        ThreadLocalContextUtil.setReadReplica(readReplica);
+        if (mdc == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(mdc);
+        }
+    }
+}
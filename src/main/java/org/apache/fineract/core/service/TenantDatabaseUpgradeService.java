@@ -19,18 +19,30 @@
 package org.apache.fineract.core.service;
 
 import com.googlecode.flyway.core.Flyway;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.fineract.organisation.tenant.TenantServerConnection;
 import org.apache.fineract.organisation.tenant.TenantServerConnectionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.fineract.config.ResourceServerConfig.IDENTITY_PROVIDER_RESOURCE_ID;
 
@@ -45,6 +57,9 @@ public class TenantDatabaseUpgradeService {
     @Autowired
     private DataSourcePerTenantService dataSourcePerTenantService;
 
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
     @Value("${fineract.datasource.core.host}")
     private String hostname;
 
@@ -81,37 +96,130 @@ public class TenantDatabaseUpgradeService {
     @Value("#{'${tenants}'.split(',')}")
     private List<String> tenants;
 
+    @Value("${fineract.migration.parallelism}")
+    private int migrationParallelism;
+
+    @Value("${fineract.migration.lazy}")
+    private boolean lazyMigration;
+
+    @Value("${fineract.migration.retry-backoff-ms}")
+    private long retryBackoffMs;
+
+    private final ConcurrentMap<Long, CompletableFuture<Void>> tenantMigrations = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Long, Long> migrationRetryAt = new ConcurrentHashMap<>();
+
+    private ExecutorService migrationExecutor;
+
     @PostConstruct
     public void setupEnvironment() {
         flywayDefaultSchema();
         insertTenants();
-        flywayTenants();
+        migrationExecutor = Executors.newFixedThreadPool(migrationParallelism, new CustomizableThreadFactory("flyway-"));
+        if (lazyMigration) {
+            logger.info("Tenant migrations deferred until the first request of each tenant");
+        } else {
+            flywayTenants();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        migrationExecutor.shutdownNow();
+    }
+
+    /**
+     * Makes sure the schema of the tenant is migrated, blocks until its migration is over. The migration runs once,
+     * on the first call for the tenant when the migrations are lazy. A failed migration is remembered and only
+     * retried by the first call after [retryBackoffMs], until then the tenant is served on its schema as it is,
+     * like when the migration fails at startup.
+     * @return true if the schema of the tenant is migrated
+     */
+    public boolean ensureMigrated(TenantServerConnection tenant) {
+        CompletableFuture<Void> migration = tenantMigrations.get(tenant.getId());
+        if (migration == null || isRetryDue(tenant.getId(), migration)) {
+            migration = tenantMigrations.compute(tenant.getId(), (id, existing) ->
+                    existing == null || isRetryDue(id, existing) ? migrateAsync(tenant) : existing);
+        }
+        try {
+            migration.join();
+            return true;
+        } catch (RuntimeException e) {
+            logger.debug("schema of tenant {} is not migrated", tenant.getSchemaName());
+            return false;
+        }
     }
 
+    /*
+     * migrates all tenants in parallel on [migrationParallelism] threads and waits for all of them,
+     * a failing tenant is logged and does not prevent the start
+     */
     private void flywayTenants() {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Void>> migrations = new ArrayList<>();
         for (TenantServerConnection tenant : repository.findAll()) {
-            if (tenant.isAutoUpdateEnabled()) {
-                try {
-                    ThreadLocalContextUtil.setTenant(tenant);
-                    final Flyway fw = new Flyway();
-                    fw.setDataSource(dataSourcePerTenantService.retrieveDataSource());
-                    fw.setLocations("sql/migrations/tenant");
-                    fw.setInitOnMigrate(true);
-                    fw.setOutOfOrder(true);
-                    Map<String, String> placeholders = new HashMap<>();
-                    placeholders.put("tenantDatabase", tenant.getSchemaName()); // add tenant as aud claim
-                    placeholders.put("userAccessTokenValidity", userTokenAccessValiditySeconds);
-                    placeholders.put("userRefreshTokenValidity", userTokenRefreshValiditySeconds);
-                    placeholders.put("clientAccessTokenValidity", clientAccessTokenValidity);
-                    placeholders.put("channelClientSecret", channelClientSecret);
-                    placeholders.put("identityProviderResourceId", IDENTITY_PROVIDER_RESOURCE_ID); // add identity provider as aud claim
-                    fw.setPlaceholders(placeholders);
-                    fw.migrate();
-                } catch (Exception e) {
-                    logger.error("Error when running flyway on tenant: {}", tenant.getSchemaName(), e);
-                } finally {
-                    ThreadLocalContextUtil.clear();
-                }
+            CompletableFuture<Void> migration = migrateAsync(tenant);
+            tenantMigrations.put(tenant.getId(), migration);
+            migrations.add(migration.exceptionally(e -> null));
+        }
+        CompletableFuture.allOf(migrations.toArray(new CompletableFuture[0])).join();
+        logger.info("Migrated {} tenants in {} ms", migrations.size(), System.currentTimeMillis() - start);
+    }
+
+    /*
+     * the time of the next attempt is recorded before the returned future fails, so a caller seeing the failure
+     * always finds it
+     */
+    private CompletableFuture<Void> migrateAsync(TenantServerConnection tenant) {
+        if (!tenant.isAutoUpdateEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> flywayTenant(tenant), migrationExecutor).whenComplete((result, e) -> {
+            if (e != null) {
+                migrationRetryAt.put(tenant.getId(), System.currentTimeMillis() + retryBackoffMs);
+            } else {
+                migrationRetryAt.remove(tenant.getId());
+            }
+        });
+    }
+
+    private boolean isRetryDue(Long tenantId, CompletableFuture<Void> migration) {
+        return migration.isCompletedExceptionally()
+                && System.currentTimeMillis() >= migrationRetryAt.getOrDefault(tenantId, 0L);
+    }
+
+    private void flywayTenant(TenantServerConnection tenant) {
+        long start = System.nanoTime();
+        try {
+            ThreadLocalContextUtil.setTenant(tenant);
+            final Flyway fw = new Flyway();
+            fw.setDataSource(dataSourcePerTenantService.retrieveDataSource());
+            fw.setLocations("sql/migrations/tenant");
+            fw.setInitOnMigrate(true);
+            fw.setOutOfOrder(true);
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("tenantDatabase", tenant.getSchemaName()); // add tenant as aud claim
+            placeholders.put("userAccessTokenValidity", userTokenAccessValiditySeconds);
+            placeholders.put("userRefreshTokenValidity", userTokenRefreshValiditySeconds);
+            placeholders.put("clientAccessTokenValidity", clientAccessTokenValidity);
+            placeholders.put("channelClientSecret", channelClientSecret);
+            placeholders.put("identityProviderResourceId", IDENTITY_PROVIDER_RESOURCE_ID); // add identity provider as aud claim
+            fw.setPlaceholders(placeholders);
+            int applied = fw.migrate();
+            logger.info("Migrated tenant {} in {} ms, {} migrations applied", tenant.getSchemaName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), applied);
+        } catch (Exception e) {
+            logger.error("Error when running flyway on tenant: {}", tenant.getSchemaName(), e);
+            throw new IllegalStateException("Migration of tenant " + tenant.getSchemaName() + " failed", e);
+        } finally {
+            ThreadLocalContextUtil.clear();
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry != null) {
+                Timer.builder("tenant.migration")
+                        .description("duration of the flyway migration of a tenant schema")
+                        .tag("tenant", tenant.getSchemaName())
+                        .register(registry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             }
         }
     }
@@ -25,6 +25,8 @@ public class ThreadLocalContextUtil {
 
     private static final ThreadLocal<TenantServerConnection> tenantcontext = new ThreadLocal<>();
 
+    private static final ThreadLocal<Boolean> readReplicaContext = new ThreadLocal<>();
+
     public static void setTenant(final TenantServerConnection tenant) {
         Assert.notNull(tenant, "tenant cannot be null");
         tenantcontext.set(tenant);
@@ -34,7 +36,24 @@ public class ThreadLocalContextUtil {
         return tenantcontext.get();
     }
 
+    /**
+     * Marks the work of the current thread as read only, the connections are then taken from the read replica
+     * of the tenant when it has one, @see [ReadReplica]
+     */
+    public static void setReadReplica(boolean readReplica) {
+        if (readReplica) {
+            readReplicaContext.set(Boolean.TRUE);
+        } else {
+            readReplicaContext.remove();
+        }
+    }
+
+    public static boolean isReadReplica() {
+        return Boolean.TRUE.equals(readReplicaContext.get());
+    }
+
     public static void clear() {
         tenantcontext.remove();
+        readReplicaContext.remove();
     }
 }
\ No newline at end of file
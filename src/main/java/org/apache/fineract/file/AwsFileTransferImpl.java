@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Date;
 
 @Service
@@ -82,6 +83,20 @@ public class AwsFileTransferImpl implements FileTransferService {
         return null;
     }
 
+    @Override
+    public InputStream openFile(String fileName, String bucketName) {
+        AWSCredentials credentials = new BasicAWSCredentials(accessKey, accessSecret);
+        s3Client = AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(credentials))
+                .withPathStyleAccessEnabled(true).withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                .build();
+        try {
+            return s3Client.getObject(bucketName, fileName).getObjectContent();
+        } catch (Exception e) {
+            logger.error("Error reading file {} from bucket {}", fileName, bucketName, e);
+        }
+        return null;
+    }
+
     @Override
     public void deleteFile(String fileName, String bucketName) {
         s3Client.deleteObject(bucketName, fileName);
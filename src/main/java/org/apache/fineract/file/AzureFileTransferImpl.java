@@ -12,6 +12,7 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -55,6 +56,16 @@ public class AzureFileTransferImpl implements FileTransferService {
         return null;
     }
 
+    @Override
+    public InputStream openFile(String fileName, String bucketName) {
+        try {
+            return client.containerName(bucketName).blobName(fileName).buildClient().openInputStream();
+        } catch (Exception e) {
+            logger.error("Error reading file {} from Azure", fileName, e);
+        }
+        return null;
+    }
+
     @Override
     public void deleteFile(String fileName, String bucketName) {
         client.containerName(bucketName).blobName(fileName).buildClient().delete();
@@ -2,7 +2,9 @@ package org.apache.fineract.file;
 
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
 
 @Service
 public interface FileTransferService {
@@ -11,6 +13,16 @@ public interface FileTransferService {
 
     byte[] downloadFile(String fileName, String bucketName);
 
+    /**
+     * Opens the content of the file for reading, the caller closes the stream. The implementations which can read
+     * the file without loading it in memory override this default.
+     * @return the content or null if the file can't be read
+     */
+    default InputStream openFile(String fileName, String bucketName) {
+        byte[] content = downloadFile(fileName, bucketName);
+        return content == null ? null : new ByteArrayInputStream(content);
+    }
+
     void deleteFile(String fileName, String bucketName);
 
 }
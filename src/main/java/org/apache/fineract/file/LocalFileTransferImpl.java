@@ -0,0 +1,74 @@
+package org.apache.fineract.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the files in a directory of the local filesystem, each bucket being a sub directory.
+ * Meant for the deployments without object storage and for development.
+ */
+@Service
+@Qualifier("localStorage")
+@ConditionalOnProperty(
+        value="cloud.local.enabled",
+        havingValue = "true")
+public class LocalFileTransferImpl implements FileTransferService {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Value("${cloud.local.directory}")
+    private String directory;
+
+    @Override
+    public String uploadFile(File file, String bucketName) {
+        String fileName = System.currentTimeMillis() + "_" + file.getName();
+        try {
+            Path bucket = Files.createDirectories(Paths.get(directory, bucketName));
+            Files.move(file.toPath(), bucket.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+            return fileName;
+        } catch (IOException e) {
+            logger.error("Error storing file {} in {}", fileName, directory, e);
+        }
+        return null;
+    }
+
+    @Override
+    public byte[] downloadFile(String fileName, String bucketName) {
+        try {
+            return Files.readAllBytes(Paths.get(directory, bucketName, fileName));
+        } catch (IOException e) {
+            logger.error("Error reading file {} from {}", fileName, directory, e);
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream openFile(String fileName, String bucketName) {
+        try {
+            return Files.newInputStream(Paths.get(directory, bucketName, fileName));
+        } catch (IOException e) {
+            logger.error("Error reading file {} from {}", fileName, directory, e);
+        }
+        return null;
+    }
+
+    @Override
+    public void deleteFile(String fileName, String bucketName) {
+        try {
+            Files.deleteIfExists(Paths.get(directory, bucketName, fileName));
+        } catch (IOException e) {
+            logger.error("Error deleting file {} from {}", fileName, directory, e);
+        }
+    }
+}
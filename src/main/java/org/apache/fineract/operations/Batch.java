@@ -12,6 +12,7 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Table;
+import java.math.BigDecimal;
 import java.util.Date;
 
 @Entity
@@ -58,6 +59,22 @@ public class Batch extends AbstractPersistableCustom<Long> {
     @Column(name = "COMPLETED_AMOUNT")
     private Long completedAmount;
 
+    /**
+     * exact sums of the amounts of the transfers, the refreshes fold into them so the amounts above only lose their
+     * fraction once instead of on every refresh, null until the first refresh
+     */
+    @Column(name = "TOTAL_AMOUNT_EXACT")
+    private BigDecimal totalAmountExact;
+
+    @Column(name = "ONGOING_AMOUNT_EXACT")
+    private BigDecimal ongoingAmountExact;
+
+    @Column(name = "FAILED_AMOUNT_EXACT")
+    private BigDecimal failedAmountExact;
+
+    @Column(name = "COMPLETED_AMOUNT_EXACT")
+    private BigDecimal completedAmountExact;
+
     @Column(name = "RESULT_FILE")
     private String result_file;
 
@@ -101,6 +118,38 @@ public class Batch extends AbstractPersistableCustom<Long> {
     @Enumerated(EnumType.STRING)
     private BatchStatus status;
 
+    /**
+     * highest transfer id folded into the summary counters, null until the first summary is computed
+     */
+    @Column(name = "LAST_TRANSFER_ID")
+    private Long lastTransferId;
+
+    /**
+     * transfers completed up to this time are reflected in the summary counters
+     */
+    @Column(name = "LAST_COMPLETED_AT")
+    private Date lastCompletedAt;
+
+    /**
+     * last time the summary counters were recomputed from all the transfers instead of the watermarks
+     */
+    @Column(name = "LAST_RECONCILED_AT")
+    private Date lastReconciledAt;
+
+    /**
+     * first refresh of the batch, then last time a refresh found a different number of transfers, null until the batch
+     * is refreshed
+     */
+    @Column(name = "TOTAL_CHANGED_AT")
+    private Date totalChangedAt;
+
+    /**
+     * comma separated payee FSPs of the transfers of a sub batch, stored once the sub batch reached a terminal status,
+     * null until then
+     */
+    @Column(name = "PAYEE_FSPS")
+    private String payeeFsps;
+
     public Batch(Long workflowInstanceKey) {
         this.workflowInstanceKey = workflowInstanceKey;
     }
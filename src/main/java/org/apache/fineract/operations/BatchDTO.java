@@ -7,6 +7,7 @@ import lombok.Setter;
 import lombok.ToString;
 
 import java.math.BigDecimal;
+import java.util.Date;
 
 @Getter
 @Setter
@@ -56,6 +57,8 @@ public class BatchDTO {
 
     private String correlationId;
 
+    private Date lastRefreshedAt;
+
     public BatchDTO(String batchId, String requestId, Long totalTransactions, Long ongoing, Long failed,
                     Long completed, BigDecimal total_amount, BigDecimal completed_amount, BigDecimal ongoing_amount,
                     BigDecimal failed_amount, String result_file, String note, String failPercentage,
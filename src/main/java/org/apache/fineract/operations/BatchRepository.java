@@ -1,13 +1,17 @@
 package org.apache.fineract.operations;
 
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
 
 public interface BatchRepository extends JpaRepository<Batch, Long>, JpaSpecificationExecutor<Batch> {
 
@@ -21,139 +25,42 @@ public interface BatchRepository extends JpaRepository<Batch, Long>, JpaSpecific
     List<Batch> findAllByBatchId(String batchId);
     Batch findBySubBatchId(String subBatchId);
 
-    @Query("SELECT bt FROM Batch bt " +
-            "WHERE bt.registeringInstitutionId LIKE :registeringInstituteId AND bt.payerFsp LIKE :payerFsp AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    List<Batch> findAllBatch(String registeringInstituteId, String payerFsp, String batchId, Pageable pageable);
-
-    @Query(value = "SELECT bt FROM Batch bt WHERE bt.startedAt >= :dateFrom AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    List<Batch> findAllFilterDateFrom(Date dateFrom, String registeringInstitutionId, String payerFsp, String batchId, Pageable pageable);
-
-    @Query(value = "SELECT bt FROM Batch bt WHERE bt.startedAt <= :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    List<Batch> findAllFilterDateTo(Date dateTo, String registeringInstitutionId, String payerFsp, String batchId, Pageable pageable);
-
-    @Query(value = "SELECT bt FROM Batch bt WHERE bt.startedAt BETWEEN :dateFrom AND :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    List<Batch> findAllFilterDateBetween(Date dateFrom, Date dateTo, String registeringInstitutionId, String payerFsp, String batchId, Pageable pageable);
-
-
-    @Query(value = "SELECT COUNT(bt) FROM Batch bt " +
-            "WHERE (bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalBatches(String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT COUNT(bt) FROM Batch bt " +
-            "WHERE bt.startedAt >= :dateFrom AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalBatchesDateFrom(Date dateFrom, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT COUNT(bt) FROM Batch bt " +
-            "WHERE bt.startedAt <= :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalBatchesDateTo(Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT COUNT(bt) FROM Batch bt " +
-            "WHERE bt.startedAt BETWEEN :dateFrom AND :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalBatchesDateBetween(Date dateFrom, Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalTransactions) FROM Batch bt " +
-            "WHERE (bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalTransactions(String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalTransactions) FROM Batch bt " +
-            "WHERE bt.startedAt >= :dateFrom AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalTransactionsDateFrom(Date dateFrom, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalTransactions) FROM Batch bt " +
-            "WHERE bt.startedAt <= :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalTransactionsDateTo(Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalTransactions) FROM Batch bt " +
-            "WHERE bt.startedAt BETWEEN :dateFrom AND :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalTransactionsDateBetween(Date dateFrom, Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalAmount) FROM Batch bt " +
-            "WHERE (bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalAmount(String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalAmount) FROM Batch bt " +
-            "WHERE bt.startedAt >= :dateFrom AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalAmountDateFrom(Date dateFrom, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalAmount) FROM Batch bt " +
-            "WHERE bt.startedAt <= :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalAmountDateTo(Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.totalAmount) FROM Batch bt " +
-            "WHERE bt.startedAt BETWEEN :dateFrom AND :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalAmountDateBetween(Date dateFrom, Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedAmount) FROM Batch bt " +
-            "WHERE (bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedAmount(String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedAmount) FROM Batch bt " +
-            "WHERE bt.startedAt >= :dateFrom AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedAmountDateFrom(Date dateFrom, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedAmount) FROM Batch bt " +
-            "WHERE bt.startedAt <= :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedAmountDateTo(Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedAmount) FROM Batch bt " +
-            "WHERE bt.startedAt BETWEEN :dateFrom AND :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedAmountDateBetween(Date dateFrom, Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedCount) FROM Batch bt " +
-            "WHERE (bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedCount(String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedCount) FROM Batch bt " +
-            "WHERE bt.startedAt >= :dateFrom AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedCountDateFrom(Date dateFrom, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedCount) FROM Batch bt " +
-            "WHERE bt.startedAt <= :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedCountDateTo(Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
-
-    @Query(value = "SELECT SUM(bt.approvedCount) FROM Batch bt " +
-            "WHERE bt.startedAt BETWEEN :dateFrom AND :dateTo AND " +
-            "(bt.registeringInstitutionId LIKE :registeringInstitutionId) AND (bt.payerFsp LIKE :payerFsp) AND " +
-            "bt.batchId LIKE :batchId AND bt.subBatchId IS NULL")
-    Optional<Long> getTotalApprovedCountDateBetween(Date dateFrom, Date dateTo, String registeringInstitutionId, String payerFsp, String batchId);
+    /**
+     * Reads the [ids] batches with a row lock held until the end of the current transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT bt FROM Batch bt WHERE bt.id IN :ids")
+    List<Batch> findAndLockByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Batch ids of the parent batches without status or in one of the [statuses], of the ones whose summary was
+     * never computed and of the ones in the [completed] status without transfer
+     */
+    @Query("SELECT bt.batchId FROM Batch bt WHERE bt.subBatchId is null and (bt.status is null " +
+            "or bt.status in :statuses or bt.resultGeneratedAt is null " +
+            "or (bt.status = :completed and bt.totalTransactions = 0))")
+    List<String> findBatchIdsToRefresh(@Param("statuses") Collection<BatchStatus> statuses,
+                                       @Param("completed") BatchStatus completed);
+
+    /**
+     * Takes the refresh lease of the batch for [owner] until [until] unless another owner holds an unexpired one.
+     * The lease columns are not mapped on [Batch] so saving a batch never overwrites them.
+     * @return 1 if the lease was taken, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE batches SET REFRESH_LEASE_OWNER = :owner, REFRESH_LEASE_UNTIL = :until" +
+            " WHERE BATCH_ID = :batchId AND SUB_BATCH_ID IS NULL" +
+            " AND (REFRESH_LEASE_UNTIL IS NULL OR REFRESH_LEASE_UNTIL < :now)", nativeQuery = true)
+    int acquireRefreshLease(@Param("batchId") String batchId, @Param("owner") String owner,
+                            @Param("until") Date until, @Param("now") Date now);
+
+    /**
+     * Gives the refresh lease of the batch back, unless it expired and was taken by another owner meanwhile
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE batches SET REFRESH_LEASE_OWNER = NULL, REFRESH_LEASE_UNTIL = NULL" +
+            " WHERE BATCH_ID = :batchId AND SUB_BATCH_ID IS NULL AND REFRESH_LEASE_OWNER = :owner", nativeQuery = true)
+    int releaseRefreshLease(@Param("batchId") String batchId, @Param("owner") String owner);
 }
@@ -9,8 +9,10 @@ import static org.springframework.data.jpa.domain.Specifications.where;
 
 public class BatchSpecs {
 
-    public static <T> Specifications<Batch> match(SingularAttribute<Batch, T> attribute, T input) {
-        return where((root, query, builder) -> builder.equal(root.get(attribute), input));
+    private static final String WILDCARD = "%";
+
+    public static Specifications<Batch> isParentBatch() {
+        return where((root, query, builder) -> builder.isNull(root.get(Batch_.subBatchId)));
     }
 
     public static Specifications<Batch> between(SingularAttribute<Batch, Date> attribute, Date from, Date to) {
@@ -27,4 +29,26 @@ public class BatchSpecs {
     public static Specifications<Batch> earlier(SingularAttribute<Batch, Date> attribute, Date to) {
         return where((root, query, builder) -> builder.lessThanOrEqualTo(root.get(attribute), to));
     }
+
+    /**
+     * Matches the attribute with a LIKE only when the input holds a wildcard, a plain equality otherwise
+     * so the indexes on the attribute can be used. The match-all "%" keeps the semantics of LIKE '%' and only
+     * excludes the null values.
+     */
+    public static Specifications<Batch> matchPattern(SingularAttribute<Batch, String> attribute, String input) {
+        if (WILDCARD.equals(input)) {
+            return where((root, query, builder) -> builder.isNotNull(root.get(attribute)));
+        }
+        if (input.contains(WILDCARD)) {
+            return where((root, query, builder) -> builder.like(root.get(attribute), input));
+        }
+        return where((root, query, builder) -> builder.equal(root.get(attribute), input));
+    }
+
+    /**
+     * @return true if the filter value restricts the result, null and blank do not
+     */
+    public static boolean isFilter(String input) {
+        return input != null && !input.trim().isEmpty();
+    }
 }
@@ -0,0 +1,65 @@
+package org.apache.fineract.operations;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.apache.fineract.organisation.parent.AbstractPersistableCustom;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import java.util.Date;
+
+/**
+ * An asynchronous csv export, the finished file is kept by the [FileTransferService] under [fileName]
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "export_jobs")
+public class ExportJob extends AbstractPersistableCustom<Long> {
+
+    @Column(name = "JOB_ID")
+    private String jobId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "STATUS")
+    private ExportJobStatus status;
+
+    @Column(name = "CREATED_AT")
+    private Date createdAt;
+
+    @Column(name = "STARTED_AT")
+    private Date startedAt;
+
+    @Column(name = "COMPLETED_AT")
+    private Date completedAt;
+
+    @Column(name = "ROW_COUNT")
+    private Long rowCount;
+
+    @JsonIgnore
+    @Column(name = "FILE_NAME")
+    private String fileName;
+
+    @Column(name = "ERROR_MESSAGE")
+    private String errorMessage;
+
+    /**
+     * the instance running the job
+     */
+    @JsonIgnore
+    @Column(name = "OWNER")
+    private String owner;
+
+    public ExportJob(String jobId, String owner) {
+        this.jobId = jobId;
+        this.owner = owner;
+        this.status = ExportJobStatus.QUEUED;
+        this.createdAt = new Date();
+    }
+}
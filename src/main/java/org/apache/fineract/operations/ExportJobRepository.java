@@ -0,0 +1,30 @@
+package org.apache.fineract.operations;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Optional;
+
+public interface ExportJobRepository extends CrudRepository<ExportJob, Long> {
+
+    Optional<ExportJob> findByJobId(String jobId);
+
+    long countByStatusInAndIdLessThanEqualAndCreatedAtAfter(Collection<ExportJobStatus> statuses, Long id, Date createdAfter);
+
+    /**
+     * Fails the jobs in one of [statuses] which belong to [owner] or were created before [createdBefore]
+     * @return the number of failed jobs
+     */
+    @Transactional
+    @Modifying
+    @Query("update ExportJob j set j.status = :failed, j.errorMessage = :errorMessage, j.completedAt = :completedAt" +
+            " where j.status in :statuses and (j.owner = :owner or j.createdAt < :createdBefore)")
+    int failOrphanedJobs(@Param("statuses") Collection<ExportJobStatus> statuses, @Param("owner") String owner,
+                         @Param("createdBefore") Date createdBefore, @Param("failed") ExportJobStatus failed,
+                         @Param("errorMessage") String errorMessage, @Param("completedAt") Date completedAt);
+}
@@ -0,0 +1,9 @@
+package org.apache.fineract.operations;
+
+public enum ExportJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    EMPTY,
+    FAILED
+}
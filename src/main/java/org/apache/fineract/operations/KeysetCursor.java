@@ -0,0 +1,52 @@
+package org.apache.fineract.operations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque position of the last row returned by a keyset (seek) paginated listing.
+ * The token encodes the (startedAt, id) pair, the same key the listing is sorted by.
+ */
+public class KeysetCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final Date startedAt;
+    private final Long id;
+
+    public KeysetCursor(Date startedAt, Long id) {
+        this.startedAt = startedAt;
+        this.id = id;
+    }
+
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String encode() {
+        String raw = startedAt.getTime() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a token produced by [encode]
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static KeysetCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = raw.split(SEPARATOR);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor " + token);
+        }
+        try {
+            return new KeysetCursor(new Date(Long.parseLong(parts[0])), Long.valueOf(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.apache.fineract.operations;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class KeysetPage<T> {
+
+    private List<T> content;
+
+    private int size;
+
+    /**
+     * token to be passed as the [after] parameter to fetch the next page, null on the last page
+     */
+    private String next;
+
+    /**
+     * total number of matching rows, only computed when explicitly requested
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalElements;
+}
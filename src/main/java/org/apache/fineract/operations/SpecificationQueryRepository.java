@@ -0,0 +1,217 @@
+package org.apache.fineract.operations;
+
+import org.apache.fineract.core.service.ReadReplica;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetConcurrency;
+import org.eclipse.persistence.config.ResultSetType;
+import org.eclipse.persistence.queries.ReportQueryResult;
+import org.eclipse.persistence.queries.ScrollableCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes specifications directly against the [EntityManager] for the cases which the
+ * spring data [JpaSpecificationExecutor] can not express, like a bounded read without the count query.
+ */
+@Repository
+public class SpecificationQueryRepository {
+
+    public interface RowHandler<T> {
+        void handle(T row) throws IOException;
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${export.fetch-size}")
+    private int exportFetchSize;
+
+    /**
+     * Returns at most [limit] entities matching the specification, ordered by [sort], without issuing a count query
+     * @param domainClass the entity class
+     * @param spec the specification to apply, may be null
+     * @param sort the sort order to apply
+     * @param limit the maximum number of rows to fetch
+     */
+    public <T> List<T> findAll(Class<T> domainClass, Specification<T> spec, Sort sort, int limit) {
+        return entityManager.createQuery(createQuery(domainClass, spec, sort))
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Returns at most [limit] entities matching the specification from the [offset]th one, ordered by [sort],
+     * without issuing a count query. Unlike a [Pageable] the offset need not be a multiple of the limit.
+     * @param domainClass the entity class
+     * @param spec the specification to apply, may be null
+     * @param sort the sort order to apply
+     * @param offset the number of rows to skip
+     * @param limit the maximum number of rows to fetch
+     */
+    public <T> List<T> findAll(Class<T> domainClass, Specification<T> spec, Sort sort, int offset, int limit) {
+        return entityManager.createQuery(createQuery(domainClass, spec, sort))
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Returns the requested page of entities matching the specification without issuing a count query
+     * @param domainClass the entity class
+     * @param spec the specification to apply, may be null
+     * @param pageable the page and sort order to fetch
+     */
+    public <T> List<T> findAll(Class<T> domainClass, Specification<T> spec, Pageable pageable) {
+        return entityManager.createQuery(createQuery(domainClass, spec, pageable.getSort()))
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+    }
+
+    /**
+     * Counts the entities matching the specification and sums the given attributes in a single query
+     * @param domainClass the entity class
+     * @param spec the specification to apply, may be null
+     * @param attributes the numeric attributes to sum
+     * @return the count followed by the sum of each attribute in order, a sum is null when no row matches
+     */
+    public <T> Object[] countAndSum(Class<T> domainClass, Specification<T> spec, String... attributes) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<T> root = query.from(domainClass);
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(builder.count(root));
+        for (String attribute : attributes) {
+            selections.add(builder.sum(root.<Number>get(attribute)));
+        }
+        query.multiselect(selections);
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, builder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    /**
+     * Streams every entity matching the specification to the [handler] through a forward only, read only cursor,
+     * so the memory used does not depend on the number of matching rows. The entities are read in read-only mode and
+     * are not registered in the persistence context.
+     * @param domainClass the entity class
+     * @param spec the specification to apply, may be null
+     * @param sort the sort order to apply
+     * @param handler called for each row in order
+     * @return the number of rows streamed
+     */
+    @ReadReplica
+    @Transactional(readOnly = true)
+    public <T> long stream(Class<T> domainClass, Specification<T> spec, Sort sort, RowHandler<T> handler) throws IOException {
+        return stream(domainClass, spec, sort, 0, 0, handler);
+    }
+
+    /**
+     * Streams the rows of the given window of the result, @see [stream]
+     * @param firstResult the position of the first row to stream
+     * @param maxResults the maximum number of rows to stream, 0 streams every row after [firstResult]
+     */
+    @ReadReplica
+    @Transactional(readOnly = true)
+    public <T> long stream(Class<T> domainClass, Specification<T> spec, Sort sort, int firstResult, int maxResults,
+                           RowHandler<T> handler) throws IOException {
+        TypedQuery<T> query = entityManager.createQuery(createQuery(domainClass, spec, sort));
+        if (firstResult > 0) {
+            query.setFirstResult(firstResult);
+        }
+        if (maxResults > 0) {
+            query.setMaxResults(maxResults);
+        }
+        return streamCursor(query, row -> handler.handle(domainClass.cast(row)));
+    }
+
+    /**
+     * Streams only the given attributes of every entity matching the specification, @see [stream], so the rows
+     * are read as plain values and no entity is built
+     * @param domainClass the entity class
+     * @param spec the specification to apply, may be null
+     * @param handler called for each row in order with the values of the attributes in order
+     * @param attributes the attributes to read
+     * @return the number of rows streamed
+     */
+    @ReadReplica
+    @Transactional(readOnly = true)
+    public <T> long streamAttributes(Class<T> domainClass, Specification<T> spec, RowHandler<Object[]> handler,
+                                     String... attributes) throws IOException {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<T> root = query.from(domainClass);
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String attribute : attributes) {
+            selections.add(root.get(attribute));
+        }
+        query.multiselect(selections);
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, builder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        // the cursor of a report query may return the raw report results instead of the arrays of the result list
+        return streamCursor(entityManager.createQuery(query), row -> handler.handle(row instanceof ReportQueryResult
+                ? ((ReportQueryResult) row).toArray() : (Object[]) row));
+    }
+
+    private long streamCursor(TypedQuery<?> query, RowHandler<Object> handler) throws IOException {
+        query.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+        query.setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE);
+        query.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+        query.setHint(QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly);
+        query.setHint(QueryHints.JDBC_FETCH_SIZE, exportFetchSize);
+        ScrollableCursor cursor = (ScrollableCursor) query.getSingleResult();
+        long rows = 0;
+        try {
+            while (cursor.hasNext()) {
+                handler.handle(cursor.next());
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private <T> CriteriaQuery<T> createQuery(Class<T> domainClass, Specification<T> spec, Sort sort) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = builder.createQuery(domainClass);
+        Root<T> root = query.from(domainClass);
+        query.select(root);
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, builder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        if (sort != null && sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, builder));
+        }
+        return query;
+    }
+}
@@ -89,6 +89,12 @@ public class TransactionRequest extends AbstractPersistableCustom<Long> {
     @Column(name = "ERROR_INFORMATION")
     private String errorInformation;
 
+    /*
+     * the errorDescription variable without its quotes, maintained by [ErrorDescriptionSyncService]
+     */
+    @Column(name = "ERROR_DESCRIPTION", insertable = false, updatable = false)
+    private String errorDescription;
+
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "transactionRequest", fetch = FetchType.LAZY)
     private List<Variable> variables;
 
@@ -302,6 +308,15 @@ public class TransactionRequest extends AbstractPersistableCustom<Long> {
         this.errorInformation = errorInformation;
     }
 
+    @JsonIgnore
+    public String getErrorDescription() {
+        return errorDescription;
+    }
+
+    public void setErrorDescription(String errorDescription) {
+        this.errorDescription = errorDescription;
+    }
+
     @Override
     public String toString() {
         return "TransactionRequest{" +
@@ -329,7 +344,6 @@ public class TransactionRequest extends AbstractPersistableCustom<Long> {
                 ", externalId='" + externalId + '\'' +
                 ", clientCorrelationId='" + clientCorrelationId + '\'' +
                 ", errorInformation='" + errorInformation + '\'' +
-                ", variables=" + variables +
                 '}';
     }
 }
@@ -1,5 +1,8 @@
 package org.apache.fineract.operations;
 
+import org.springframework.beans.BeanUtils;
+
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -37,4 +40,34 @@ public class TransactionRequestDetail {
     public void setVariables(List<Variable> variables) {
         this.variables = variables;
     }
+
+    /**
+     * Copy of the detail which shares no entity with it, the lazy relations of the entities are left out
+     */
+    public TransactionRequestDetail copy() {
+        TransactionRequest transactionRequestCopy = null;
+        if (transactionRequest != null) {
+            transactionRequestCopy = new TransactionRequest();
+            BeanUtils.copyProperties(transactionRequest, transactionRequestCopy, "variables");
+        }
+        List<Task> tasksCopy = null;
+        if (tasks != null) {
+            tasksCopy = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                Task taskCopy = new Task();
+                BeanUtils.copyProperties(task, taskCopy);
+                tasksCopy.add(taskCopy);
+            }
+        }
+        List<Variable> variablesCopy = null;
+        if (variables != null) {
+            variablesCopy = new ArrayList<>(variables.size());
+            for (Variable variable : variables) {
+                Variable variableCopy = new Variable();
+                BeanUtils.copyProperties(variable, variableCopy, "transactionRequest");
+                variablesCopy.add(variableCopy);
+            }
+        }
+        return new TransactionRequestDetail(transactionRequestCopy, tasksCopy, variablesCopy);
+    }
 }
@@ -2,9 +2,12 @@ package org.apache.fineract.operations;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,10 +15,42 @@ public interface TransactionRequestRepository extends JpaRepository<TransactionR
 
     TransactionRequest findFirstByWorkflowInstanceKey(Long workflowInstanceKey);
 
-//    @Deprecated(forRemoval = true)
-    @Query("SELECT tr FROM TransactionRequest tr INNER JOIN Variable v ON tr.workflowInstanceKey = v.workflowInstanceKey" +
-            " WHERE v.name=\"errorDescription\" and v.value IN :errorDescription")
+    List<TransactionRequest> findByWorkflowInstanceKeyIn(Collection<String> workflowInstanceKeys);
+
+    /**
+     * @param errorDescription the descriptions without their surrounding quotes
+     */
+    @Query("SELECT tr FROM TransactionRequest tr WHERE tr.errorDescription IN :errorDescription")
     List<TransactionRequest> filterByErrorDescription(@Param("errorDescription") List<String> errorDescription);
 
+    @Query("SELECT MAX(tr.id) FROM TransactionRequest tr")
+    Long findMaxId();
+
+    /**
+     * Copies the latest errorDescription variable of the workflows with one in (fromId, toId] to their transaction
+     * requests
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE transaction_requests tr JOIN variables v ON v.WORKFLOW_INSTANCE_KEY = tr.WORKFLOW_INSTANCE_KEY" +
+            " SET tr.ERROR_DESCRIPTION = LEFT(TRIM(BOTH '\"' FROM v.VALUE), 1000)" +
+            " WHERE v.NAME = 'errorDescription' AND v.ID > :fromId AND v.ID <= :toId" +
+            " AND v.ID = (SELECT MAX(lv.ID) FROM variables lv" +
+            " WHERE lv.WORKFLOW_INSTANCE_KEY = v.WORKFLOW_INSTANCE_KEY AND lv.NAME = 'errorDescription')", nativeQuery = true)
+    int materializeErrorDescriptionsOfVariables(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * Fills the error description of the transaction requests with an id in (fromId, toId] which were inserted
+     * after their errorDescription variable, from the latest one of their workflow
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE transaction_requests tr JOIN variables v ON v.WORKFLOW_INSTANCE_KEY = tr.WORKFLOW_INSTANCE_KEY" +
+            " SET tr.ERROR_DESCRIPTION = LEFT(TRIM(BOTH '\"' FROM v.VALUE), 1000)" +
+            " WHERE v.NAME = 'errorDescription' AND tr.ID > :fromId AND tr.ID <= :toId AND tr.ERROR_DESCRIPTION IS NULL" +
+            " AND v.ID = (SELECT MAX(lv.ID) FROM variables lv" +
+            " WHERE lv.WORKFLOW_INSTANCE_KEY = v.WORKFLOW_INSTANCE_KEY AND lv.NAME = 'errorDescription')", nativeQuery = true)
+    int materializeErrorDescriptions(@Param("fromId") long fromId, @Param("toId") long toId);
+
     Optional<TransactionRequest> findFirstByTransactionId(String transactionId);
 }
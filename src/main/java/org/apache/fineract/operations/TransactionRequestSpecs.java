@@ -1,11 +1,10 @@
 package org.apache.fineract.operations;
 
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specifications;
 
 import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
-import javax.persistence.criteria.Predicate;
 import javax.persistence.metamodel.SingularAttribute;
 import java.util.Date;
 import java.util.List;
@@ -29,6 +28,32 @@ public class TransactionRequestSpecs {
         return where((root, query, builder) -> builder.lessThanOrEqualTo(root.get(attribute), to));
     }
 
+    /**
+     * Matches the rows with a startedAt, the only ones keyset pagination on (startedAt, id) can seek past
+     */
+    public static Specifications<TransactionRequest> started() {
+        return where((root, query, builder) -> builder.isNotNull(root.get(TransactionRequest_.startedAt)));
+    }
+
+    /**
+     * Seek predicate for keyset pagination on (startedAt, id), matches the rows strictly after the cursor
+     * in the given sort direction
+     */
+    public static Specifications<TransactionRequest> after(KeysetCursor cursor, Sort.Direction direction) {
+        return where((root, query, builder) -> {
+            Path<Date> startedAt = root.get(TransactionRequest_.startedAt);
+            Path<Long> id = root.get("id");
+            if (direction.isDescending()) {
+                return builder.or(
+                        builder.lessThan(startedAt, cursor.getStartedAt()),
+                        builder.and(builder.equal(startedAt, cursor.getStartedAt()), builder.lessThan(id, cursor.getId())));
+            }
+            return builder.or(
+                    builder.greaterThan(startedAt, cursor.getStartedAt()),
+                    builder.and(builder.equal(startedAt, cursor.getStartedAt()), builder.greaterThan(id, cursor.getId())));
+        });
+    }
+
 
     public static <T> Specifications<TransactionRequest> match(SingularAttribute<TransactionRequest, T> attribute, T input) {
         return where((root, query, builder) -> builder.equal(root.get(attribute), input));
@@ -45,20 +70,12 @@ public class TransactionRequestSpecs {
         }));
     }
 
+    /**
+     * Matches the materialized error description, @see [TransactionRequest.errorDescription]
+     * @param errorDescriptions the descriptions without their surrounding quotes
+     */
     public static Specifications<TransactionRequest> filterByErrorDescription(List<String> errorDescriptions) {
-        return where(((root, query, cb) -> {
-            Join<Variable, TransactionRequest> txnVariables = root.join("variables");
-
-            Predicate a = cb.equal(txnVariables.get("name"), "errorDescription");
-
-            Path<String> group = txnVariables.get("value");
-            CriteriaBuilder.In<String> cr = cb.in(group);
-            for(String errorDesc: errorDescriptions) {
-                cr.value(errorDesc);
-            }
-
-            return cb.and(cr, a);
-        }));
+        return in(TransactionRequest_.errorDescription, errorDescriptions);
     }
 
 }
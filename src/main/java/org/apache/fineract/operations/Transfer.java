@@ -2,6 +2,7 @@ package org.apache.fineract.operations;
 
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.fineract.organisation.parent.AbstractPersistableCustom;
 import org.eclipse.persistence.annotations.Index;
 
@@ -75,6 +76,12 @@ public class Transfer extends AbstractPersistableCustom<Long> {
     @Column(name = "error_information")
     private String errorInformation;
 
+    /*
+     * the errorDescription variable without its quotes, maintained by [ErrorDescriptionSyncService]
+     */
+    @Column(name = "ERROR_DESCRIPTION", insertable = false, updatable = false)
+    private String errorDescription;
+
     @Column(name = "BATCH_ID")
     private String batchId;
 
@@ -265,6 +272,15 @@ public class Transfer extends AbstractPersistableCustom<Long> {
         this.errorInformation = errorInformation;
     }
 
+    @JsonIgnore
+    public String getErrorDescription() {
+        return errorDescription;
+    }
+
+    public void setErrorDescription(String errorDescription) {
+        this.errorDescription = errorDescription;
+    }
+
     public String getBatchId() {
         return batchId;
     }
@@ -5,9 +5,13 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +19,8 @@ public interface TransferRepository extends JpaRepository<Transfer, Long>, JpaSp
 
     Transfer findFirstByWorkflowInstanceKey(Long workflowInstanceKey);
 
+    List<Transfer> findByWorkflowInstanceKeyIn(Collection<Long> workflowInstanceKeys);
+
     Transfer findFirstByTransactionIdAndDirection(String transactionId, String direction);
 
     Optional<Transfer> findFirstByTransactionId(String transactionId);
@@ -24,9 +30,113 @@ public interface TransferRepository extends JpaRepository<Transfer, Long>, JpaSp
     Page<Transfer> findAllByBatchIdAndStatus(String batchId, String status, Pageable pageable);
 
     Page<Transfer> findAllByBatchId(String batchId, Pageable pageable);
+
     Long countAllByBatchId(String batchId);
+
+    @Query("SELECT DISTINCT t.payeeDfspId FROM Transfer t WHERE t.batchId = :batchId")
+    List<String> findDistinctPayeeDfspIdsByBatchId(@Param("batchId") String batchId);
+
+    /**
+     * payer party ids of the transfers of the batch in id order, page it to read only the first ones
+     */
+    @Query("SELECT t.payerPartyId FROM Transfer t WHERE t.batchId = :batchId ORDER BY t.id")
+    List<String> findPayerPartyIdsByBatchId(@Param("batchId") String batchId, Pageable pageable);
     Page<Transfer> findAll(Pageable pageable);
     @Query("SELECT t FROM Transfer t WHERE t.batchId IN (SELECT b.subBatchId FROM Batch b WHERE b.batchId = :batchId AND b.subBatchId IS NOT NULL)")
     Page<Transfer>findAllByBatchIdMatchSubBatchId(String batchId, Pageable pageable);
 
+    @Query("SELECT MAX(t.id) FROM Transfer t")
+    Long findMaxId();
+
+    /**
+     * Copies the latest errorDescription variable of the workflows with one in (fromId, toId] to their transfers
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE transfers t JOIN variables v ON v.WORKFLOW_INSTANCE_KEY = t.WORKFLOW_INSTANCE_KEY" +
+            " SET t.ERROR_DESCRIPTION = LEFT(TRIM(BOTH '\"' FROM v.VALUE), 1000)" +
+            " WHERE v.NAME = 'errorDescription' AND v.ID > :fromId AND v.ID <= :toId" +
+            " AND v.ID = (SELECT MAX(lv.ID) FROM variables lv" +
+            " WHERE lv.WORKFLOW_INSTANCE_KEY = v.WORKFLOW_INSTANCE_KEY AND lv.NAME = 'errorDescription')", nativeQuery = true)
+    int materializeErrorDescriptionsOfVariables(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * Fills the error description of the transfers with an id in (fromId, toId] which were inserted after their
+     * errorDescription variable, from the latest one of their workflow
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE transfers t JOIN variables v ON v.WORKFLOW_INSTANCE_KEY = t.WORKFLOW_INSTANCE_KEY" +
+            " SET t.ERROR_DESCRIPTION = LEFT(TRIM(BOTH '\"' FROM v.VALUE), 1000)" +
+            " WHERE v.NAME = 'errorDescription' AND t.ID > :fromId AND t.ID <= :toId AND t.ERROR_DESCRIPTION IS NULL" +
+            " AND v.ID = (SELECT MAX(lv.ID) FROM variables lv" +
+            " WHERE lv.WORKFLOW_INSTANCE_KEY = v.WORKFLOW_INSTANCE_KEY AND lv.NAME = 'errorDescription')", nativeQuery = true)
+    int materializeErrorDescriptions(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    String COMPLETED = "org.apache.fineract.operations.TransferStatus.COMPLETED";
+    String FAILED = "org.apache.fineract.operations.TransferStatus.FAILED";
+    String IN_PROGRESS = "org.apache.fineract.operations.TransferStatus.IN_PROGRESS";
+
+    /*
+     * state of a transfer as seen by the batch summary at :cutoff, a completion is only taken into account
+     * once its completedAt is not after the cutoff
+     */
+    String COMPLETED_AT_CUTOFF = "(t.status = " + COMPLETED + " AND (t.completedAt IS NULL OR t.completedAt <= :cutoff)) OR " +
+            "(t.status = " + IN_PROGRESS + " AND t.completedAt <= :cutoff)";
+    String FAILED_AT_CUTOFF = "t.status = " + FAILED + " AND (t.completedAt IS NULL OR t.completedAt <= :cutoff)";
+    String ONGOING_AT_CUTOFF = "(t.status = " + IN_PROGRESS + " AND (t.completedAt IS NULL OR t.completedAt > :cutoff)) OR " +
+            "(t.status IN (" + COMPLETED + ", " + FAILED + ") AND t.completedAt > :cutoff)";
+
+    /*
+     * a transfer is classified by its latest paymentMode variable only, joining all of them would count the transfer
+     * once per variable row
+     */
+    String BATCH_TRANSFERS = "FROM Batch b JOIN Transfer t ON t.batchId = COALESCE(b.subBatchId, b.batchId) " +
+            "LEFT JOIN Variable v ON v.id = (SELECT MAX(lv.id) FROM Variable lv " +
+            "WHERE lv.workflowInstanceKey = t.workflowInstanceKey AND lv.name = 'paymentMode') ";
+
+    String TRANSFERS_SUMMARY = "SELECT b.id, v.value, COUNT(t), SUM(t.amount), " +
+            "SUM(CASE WHEN " + COMPLETED_AT_CUTOFF + " THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN " + COMPLETED_AT_CUTOFF + " THEN t.amount ELSE 0 END), " +
+            "SUM(CASE WHEN " + FAILED_AT_CUTOFF + " THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN " + FAILED_AT_CUTOFF + " THEN t.amount ELSE 0 END), " +
+            "SUM(CASE WHEN " + ONGOING_AT_CUTOFF + " THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN " + ONGOING_AT_CUTOFF + " THEN t.amount ELSE 0 END), " +
+            "MAX(t.id) " + BATCH_TRANSFERS;
+
+    /**
+     * Aggregates the transfers of the given batches which were inserted after the [lastTransferId] watermark of their
+     * batch (all of them when the batch has no watermark yet), grouped by batch and the value of the [paymentMode]
+     * variable of the transfer (null when the variable is missing).
+     * Each row is [batch id, paymentMode, total, totalAmount, completed, completedAmount, failed, failedAmount,
+     * ongoing, ongoingAmount, max transfer id].
+     */
+    @Query(TRANSFERS_SUMMARY + "WHERE b.id IN :batchIds AND (b.lastTransferId IS NULL OR t.id > b.lastTransferId) " +
+            "GROUP BY b.id, v.value")
+    List<Object[]> summarizeNewTransfers(@Param("batchIds") List<Long> batchIds, @Param("cutoff") Date cutoff);
+
+    /**
+     * Aggregates every transfer of the given batches whatever their watermarks, the rows are the same as the ones
+     * of [summarizeNewTransfers]
+     */
+    @Query(TRANSFERS_SUMMARY + "WHERE b.id IN :batchIds GROUP BY b.id, v.value")
+    List<Object[]> summarizeTransfers(@Param("batchIds") List<Long> batchIds, @Param("cutoff") Date cutoff);
+
+    /**
+     * Aggregates the transfers already folded into the summary of their batch which completed between the
+     * [lastCompletedAt] watermark of the batch and :cutoff, these were counted as ongoing by the previous refresh.
+     * Each row is [batch id, paymentMode, completed, completedAmount, failed, failedAmount, total, totalAmount],
+     * the total being the count and amount leaving the ongoing state.
+     */
+    @Query("SELECT b.id, v.value, " +
+            "SUM(CASE WHEN t.status IN (" + COMPLETED + ", " + IN_PROGRESS + ") THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN t.status IN (" + COMPLETED + ", " + IN_PROGRESS + ") THEN t.amount ELSE 0 END), " +
+            "SUM(CASE WHEN t.status = " + FAILED + " THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN t.status = " + FAILED + " THEN t.amount ELSE 0 END), " +
+            "COUNT(t), SUM(t.amount) " + BATCH_TRANSFERS +
+            "WHERE b.id IN :batchIds AND t.id <= b.lastTransferId AND t.completedAt > b.lastCompletedAt " +
+            "AND t.completedAt <= :cutoff AND t.status IN (" + COMPLETED + ", " + FAILED + ", " + IN_PROGRESS + ") " +
+            "GROUP BY b.id, v.value")
+    List<Object[]> summarizeCompletedTransfers(@Param("batchIds") List<Long> batchIds, @Param("cutoff") Date cutoff);
+
 }
@@ -2,6 +2,7 @@ package org.apache.fineract.operations;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -9,7 +10,11 @@ import org.mifos.connector.common.channel.dto.PhErrorDTO;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -44,15 +49,83 @@ public class TransferResponse {
     private String batchId;
     private String clientCorrelationId;
 
+    /**
+     * Copies the fields of the [Transfer] entity, the raw errorInformation json is not copied and has to be
+     * parsed using [readErrorInformation]
+     */
+    public static TransferResponse from(Transfer transfer) {
+        TransferResponse response = new TransferResponse();
+        response.setId(transfer.getId() != null ? transfer.getId().intValue() : 0);
+        response.setWorkflowInstanceKey(transfer.getWorkflowInstanceKey());
+        response.setTransactionId(transfer.getTransactionId());
+        response.setStartedAt(transfer.getStartedAt());
+        response.setCompletedAt(transfer.getCompletedAt());
+        response.setStatus(transfer.getStatus());
+        response.setStatusDetail(transfer.getStatusDetail());
+        response.setPayeeDfspId(transfer.getPayeeDfspId());
+        response.setPayeePartyId(transfer.getPayeePartyId());
+        response.setPayeePartyIdType(transfer.getPayeePartyIdType());
+        response.setPayeeFee(transfer.getPayeeFee());
+        response.setPayeeFeeCurrency(transfer.getPayeeFeeCurrency());
+        response.setPayeeQuoteCode(transfer.getPayeeQuoteCode());
+        response.setPayerDfspId(transfer.getPayerDfspId());
+        response.setPayerPartyId(transfer.getPayerPartyId());
+        response.setPayerPartyIdType(transfer.getPayerPartyIdType());
+        response.setPayerFee(transfer.getPayerFee());
+        response.setPayerFeeCurrency(transfer.getPayerFeeCurrency());
+        response.setPayerQuoteCode(transfer.getPayerQuoteCode());
+        response.setAmount(transfer.getAmount());
+        response.setCurrency(transfer.getCurrency());
+        response.setDirection(transfer.getDirection());
+        response.setBatchId(transfer.getBatchId());
+        response.setClientCorrelationId(transfer.getClientCorrelationId());
+        return response;
+    }
+
+    /**
+     * Maps the [transfers] with [from] and parses their errorInformation json. The same error json is usually
+     * repeated across the rows of a page, so each distinct value is parsed only once.
+     * @param errorInformationReader an [ObjectReader] for [PhErrorDTO]
+     */
+    public static List<TransferResponse> from(List<Transfer> transfers, ObjectReader errorInformationReader) {
+        Map<String, PhErrorDTO> parsedErrorInformation = new HashMap<>();
+        List<TransferResponse> transferResponseList = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            TransferResponse transferResponse = from(transfer);
+            String json = transfer.getErrorInformation();
+            if (json != null) {
+                if (!parsedErrorInformation.containsKey(json)) {
+                    parsedErrorInformation.put(json, readErrorInformation(json, errorInformationReader));
+                }
+                transferResponse.setErrorInformation(parsedErrorInformation.get(json));
+            }
+            transferResponseList.add(transferResponse);
+        }
+        return transferResponseList;
+    }
+
     public void parseErrorInformation(String json, ObjectMapper mapper) throws IOException {
+        this.errorInformation = readErrorInformation(json, mapper.readerFor(PhErrorDTO.class));
+    }
+
+    /**
+     * Parses the errorInformation json, falling back to the unescaped json for the values stored as escaped string
+     * @param json the raw errorInformation column value
+     * @param reader an [ObjectReader] for [PhErrorDTO]
+     * @return the parsed DTO or null if the json is empty or can't be parsed
+     */
+    public static PhErrorDTO readErrorInformation(String json, ObjectReader reader) {
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
         try {
-            this.errorInformation = mapper.readValue(json, PhErrorDTO.class);
+            return reader.readValue(json);
         } catch (Exception e) {
             try {
                 String formattedJson = StringEscapeUtils.unescapeJava(json);
-                this.errorInformation = mapper.readValue(formattedJson, PhErrorDTO.class);
+                return reader.readValue(formattedJson);
             } catch (Exception innerException) {
-                this.errorInformation = null;
+                return null;
             }
         }
     }
@@ -1,5 +1,6 @@
 package org.apache.fineract.operations;
 
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specifications;
 
 import javax.persistence.criteria.CriteriaBuilder;
@@ -27,6 +28,32 @@ public class TransferSpecs {
         return where((root, query, builder) -> builder.lessThanOrEqualTo(root.get(attribute), to));
     }
 
+    /**
+     * Matches the rows with a startedAt, the only ones keyset pagination on (startedAt, id) can seek past
+     */
+    public static Specifications<Transfer> started() {
+        return where((root, query, builder) -> builder.isNotNull(root.get(Transfer_.startedAt)));
+    }
+
+    /**
+     * Seek predicate for keyset pagination on (startedAt, id), matches the rows strictly after the cursor
+     * in the given sort direction
+     */
+    public static Specifications<Transfer> after(KeysetCursor cursor, Sort.Direction direction) {
+        return where((root, query, builder) -> {
+            Path<Date> startedAt = root.get(Transfer_.startedAt);
+            Path<Long> id = root.get("id");
+            if (direction.isDescending()) {
+                return builder.or(
+                        builder.lessThan(startedAt, cursor.getStartedAt()),
+                        builder.and(builder.equal(startedAt, cursor.getStartedAt()), builder.lessThan(id, cursor.getId())));
+            }
+            return builder.or(
+                    builder.greaterThan(startedAt, cursor.getStartedAt()),
+                    builder.and(builder.equal(startedAt, cursor.getStartedAt()), builder.greaterThan(id, cursor.getId())));
+        });
+    }
+
 
     public static <T> Specifications<Transfer> match(SingularAttribute<Transfer, T> attribute, T input) {
         return where((root, query, builder) -> builder.equal(root.get(attribute), input));
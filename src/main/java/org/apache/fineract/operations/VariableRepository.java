@@ -3,7 +3,10 @@ package org.apache.fineract.operations;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,8 +14,40 @@ public interface VariableRepository extends CrudRepository<Variable, Long> {
 
     List<Variable> findByWorkflowInstanceKeyOrderByTimestamp(Long workflowInstanceKey);
 
+    List<Variable> findByWorkflowInstanceKeyInOrderByTimestamp(Collection<Long> workflowInstanceKeys);
+
+    /**
+     * Loads the (name, value) of the variables of a workflow instance without materializing the entities, ordered
+     * by timestamp so the latest value of a variable comes last
+     */
+    @Query("SELECT v.name, v.value FROM Variable v WHERE v.workflowInstanceKey = :workflowInstanceKey ORDER BY v.timestamp")
+    List<Object[]> findNamesAndValues(@Param("workflowInstanceKey") Long workflowInstanceKey);
+
+    /**
+     * Loads the (name, value) of the named variables of a workflow instance, ordered by timestamp
+     */
+    @Query("SELECT v.name, v.value FROM Variable v " +
+            "WHERE v.workflowInstanceKey = :workflowInstanceKey AND v.name IN :names ORDER BY v.timestamp")
+    List<Object[]> findNamesAndValues(@Param("workflowInstanceKey") Long workflowInstanceKey,
+                                      @Param("names") Collection<String> names);
+
+    @Query("SELECT MAX(v.id) FROM Variable v")
+    Long findMaxId();
+
     @Query("SELECT v from Variable v WHERE v.workflowInstanceKey=:workflowInstanceKey and v.name=:name")
     Optional<Variable> findByWorkflowInstanceKeyAndVariableName(@Param("name") String name,
                                                       @Param("workflowInstanceKey")  Long workflowInstanceKey);
 
+    /**
+     * Loads the (workflowInstanceKey, name, value) of the named variables of several workflow instances at once,
+     * ordered by timestamp so the latest value of a variable comes last. Runs in its own transaction because the
+     * connection of a streamed export can not issue other statements while its cursor is open, the exports calling
+     * it are capped so they can not take the whole tenant pool with their two connections.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @Query("SELECT v.workflowInstanceKey, v.name, v.value FROM Variable v " +
+            "WHERE v.workflowInstanceKey IN :workflowInstanceKeys AND v.name IN :names ORDER BY v.timestamp")
+    List<Object[]> findValues(@Param("workflowInstanceKeys") Collection<Long> workflowInstanceKeys,
+                              @Param("names") Collection<String> names);
+
 }
@@ -0,0 +1,32 @@
+package org.apache.fineract.operations;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.apache.fineract.organisation.parent.AbstractPersistableCustom;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * The last id of a table processed by an incremental job, the rows with a greater id are still to be processed
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "watermarks")
+public class Watermark extends AbstractPersistableCustom<Long> {
+
+    @Column(name = "NAME")
+    private String name;
+
+    @Column(name = "LAST_ID")
+    private Long lastId;
+
+    public Watermark(String name, Long lastId) {
+        this.name = name;
+        this.lastId = lastId;
+    }
+}
@@ -0,0 +1,11 @@
+package org.apache.fineract.operations;
+
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.Optional;
+
+public interface WatermarkRepository extends CrudRepository<Watermark, Long> {
+
+    Optional<Watermark> findByName(String name);
+
+}
@@ -47,6 +47,21 @@ public class TenantServerConnection extends AbstractPersistableCustom<Long> {
     @Column(name = "auto_update")
     private boolean autoUpdateEnabled;
 
+    @Column(name = "pool_max_size")
+    private Integer poolMaxSize;
+
+    @Column(name = "pool_min_idle")
+    private Integer poolMinIdle;
+
+    /**
+     * host of the read replica of the schema, null when the tenant has no replica
+     */
+    @Column(name = "replica_schema_server")
+    private String replicaSchemaServer;
+
+    @Column(name = "replica_schema_server_port")
+    private String replicaSchemaServerPort;
+
     public TenantServerConnection() {}
 
     public String getSchemaServer() {
@@ -96,4 +111,40 @@ public class TenantServerConnection extends AbstractPersistableCustom<Long> {
     public void setAutoUpdateEnabled(boolean autoUpdateEnabled) {
         this.autoUpdateEnabled = autoUpdateEnabled;
     }
+
+    public Integer getPoolMaxSize() {
+        return poolMaxSize;
+    }
+
+    public void setPoolMaxSize(Integer poolMaxSize) {
+        this.poolMaxSize = poolMaxSize;
+    }
+
+    public Integer getPoolMinIdle() {
+        return poolMinIdle;
+    }
+
+    public void setPoolMinIdle(Integer poolMinIdle) {
+        this.poolMinIdle = poolMinIdle;
+    }
+
+    public String getReplicaSchemaServer() {
+        return replicaSchemaServer;
+    }
+
+    public void setReplicaSchemaServer(String replicaSchemaServer) {
+        this.replicaSchemaServer = replicaSchemaServer;
+    }
+
+    public String getReplicaSchemaServerPort() {
+        return replicaSchemaServerPort;
+    }
+
+    public void setReplicaSchemaServerPort(String replicaSchemaServerPort) {
+        this.replicaSchemaServerPort = replicaSchemaServerPort;
+    }
+
+    public boolean hasReplica() {
+        return replicaSchemaServer != null && !replicaSchemaServer.isEmpty();
+    }
 }
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.organisation.tenant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In memory registry of the tenant connections by schema name, so resolving the tenant of a request is a map lookup
+ * instead of a query on the tenants schema. The entries are reloaded after [ttlMs] and all tenants are refreshed
+ * every [refreshIntervalMs], unknown schema names are remembered for [negativeTtlMs]. The tenants schema is queried
+ * outside of the map so a slow query never blocks the lookups of other tenants.
+ */
+@Component
+public class TenantServerConnectionRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final ConcurrentMap<String, Entry> tenants = new ConcurrentHashMap<>();
+    private final TenantServerConnectionRepository repository;
+
+    @Value("${tenants.cache.ttl-ms}")
+    private long ttlMs;
+
+    @Value("${tenants.cache.negative-ttl-ms}")
+    private long negativeTtlMs;
+
+    @Value("${tenants.cache.max-entries}")
+    private int maxEntries;
+
+    public TenantServerConnectionRegistry(TenantServerConnectionRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * @return the connection of the tenant, or null if there is no tenant with this schema name
+     */
+    public TenantServerConnection findOneBySchemaName(String schemaName) {
+        Entry entry = tenants.get(schemaName);
+        if (entry != null && !entry.isExpired()) {
+            return entry.connection;
+        }
+        // the tenants schema is queried outside of the map, a compute would hold the lock of the bin during the query
+        Entry loaded = load(schemaName);
+        if (loaded.connection == null) {
+            makeRoom();
+        }
+        return tenants.merge(schemaName, loaded, (existing, fresh) -> existing.isExpired() ? fresh : existing).connection;
+    }
+
+    /**
+     * Drops the cached connection of the tenant, the next request of the tenant reads it again
+     */
+    public void evict(String schemaName) {
+        tenants.remove(schemaName);
+    }
+
+    @Scheduled(fixedDelayString = "${tenants.cache.refresh-interval-ms}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        for (TenantServerConnection connection : repository.findAll()) {
+            tenants.put(connection.getSchemaName(), new Entry(connection, now + ttlMs));
+        }
+        tenants.values().removeIf(Entry::isExpired);
+    }
+
+    private Entry load(String schemaName) {
+        TenantServerConnection connection = repository.findOneBySchemaName(schemaName);
+        if (connection != null) {
+            return new Entry(connection, System.currentTimeMillis() + ttlMs);
+        }
+        logger.warn("Unknown tenant {}", schemaName);
+        return new Entry(null, System.currentTimeMillis() + negativeTtlMs);
+    }
+
+    /*
+     * unknown tenants are always remembered, once the registry holds [maxEntries] entries the expired ones and then
+     * the unknown tenants are dropped: random tenant identifiers can not grow it without bound and the known tenants
+     * are kept
+     */
+    private void makeRoom() {
+        if (tenants.size() < maxEntries) {
+            return;
+        }
+        tenants.values().removeIf(Entry::isExpired);
+        if (tenants.size() >= maxEntries) {
+            tenants.values().removeIf(entry -> entry.connection == null);
+        }
+    }
+
+    private static class Entry {
+        private final TenantServerConnection connection;
+        private final long expiresAt;
+
+        private Entry(TenantServerConnection connection, long expiresAt) {
+            this.connection = connection;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
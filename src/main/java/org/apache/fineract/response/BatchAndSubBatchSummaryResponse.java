@@ -3,9 +3,12 @@ package org.apache.fineract.response;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.beans.BeanUtils;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -70,4 +73,23 @@ public class BatchAndSubBatchSummaryResponse {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<SubBatchSummary> subBatchSummaryList;
     private Long totalInstructionCount;
+
+    /**
+     * Copy of the response which shares no mutable collection or sub batch summary with it
+     */
+    public BatchAndSubBatchSummaryResponse copy() {
+        BatchAndSubBatchSummaryResponse copy = new BatchAndSubBatchSummaryResponse();
+        BeanUtils.copyProperties(this, copy);
+        if (payeeFsp != null) {
+            copy.setPayeeFsp(new HashSet<>(payeeFsp));
+        }
+        if (subBatchSummaryList != null) {
+            List<SubBatchSummary> subBatchSummariesCopy = new ArrayList<>(subBatchSummaryList.size());
+            for (SubBatchSummary subBatchSummary : subBatchSummaryList) {
+                subBatchSummariesCopy.add(subBatchSummary.copy());
+            }
+            copy.setSubBatchSummaryList(subBatchSummariesCopy);
+        }
+        return copy;
+    }
 }
@@ -3,9 +3,12 @@ package org.apache.fineract.response;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.fineract.operations.Instruction;
+import org.springframework.beans.BeanUtils;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -74,4 +77,24 @@ public class SubBatchSummary {
 
     private Long totalInstructionCount;
 
+    /**
+     * Copy of the summary which shares no mutable collection with it
+     */
+    public SubBatchSummary copy() {
+        SubBatchSummary copy = new SubBatchSummary();
+        BeanUtils.copyProperties(this, copy);
+        if (payeeFspSet != null) {
+            copy.setPayeeFspSet(new HashSet<>(payeeFspSet));
+        }
+        if (instructionList != null) {
+            List<Instruction> instructionsCopy = new ArrayList<>(instructionList.size());
+            for (Instruction instruction : instructionList) {
+                Instruction instructionCopy = new Instruction();
+                BeanUtils.copyProperties(instruction, instructionCopy);
+                instructionsCopy.add(instructionCopy);
+            }
+            copy.setInstructionList(instructionsCopy);
+        }
+        return copy;
+    }
 }
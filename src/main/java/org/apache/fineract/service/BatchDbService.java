@@ -9,12 +9,4 @@ public interface BatchDbService {
 
     public BatchPaginatedResponse getBatch(String startFrom, String startTo, String registeringInstitutionId,
                                            String payerFsp, String batchId, PageRequest pager);
-
-    public BatchPaginatedResponse getBatch(String registeringInstitutionId, String payerFsp, String batchId, PageRequest pager);
-
-    public BatchPaginatedResponse getBatchDateTo(String startTo, String registeringInstitutionId,
-                                           String payerFsp, String batchId, PageRequest pager);
-
-    public BatchPaginatedResponse getBatchDateFrom(String startFrom, String registeringInstitutionId,
-                                                 String payerFsp, String batchId, PageRequest pager);
 }
@@ -1,17 +1,21 @@
 package org.apache.fineract.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.fineract.core.service.ThreadLocalContextUtil;
+import org.apache.fineract.config.AsyncConfig;
+import org.apache.fineract.core.service.ReadReplica;
 import org.apache.fineract.operations.Batch;
 import org.apache.fineract.operations.BatchPaginatedResponse;
-import org.apache.fineract.operations.BatchRepository;
-import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.apache.fineract.operations.BatchSpecs;
+import org.apache.fineract.operations.Batch_;
+import org.apache.fineract.operations.SpecificationQueryRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specifications;
 import org.springframework.stereotype.Service;
-import java.util.Date;
+import java.text.ParseException;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import static org.apache.fineract.core.service.OperatorUtils.dateFormat;
 
 /**
@@ -22,253 +26,65 @@ import static org.apache.fineract.core.service.OperatorUtils.dateFormat;
 @Service
 public class BatchDbServiceImpl implements BatchDbService {
 
-    private final BatchRepository batchRepository;
+    private final SpecificationQueryRepository specificationQueryRepository;
 
-    public BatchDbServiceImpl(BatchRepository batchRepository) {
-        this.batchRepository = batchRepository;
+    private final Executor executor;
+
+    public BatchDbServiceImpl(SpecificationQueryRepository specificationQueryRepository,
+                              @Qualifier(AsyncConfig.REPOSITORY_EXECUTOR) Executor executor) {
+        this.specificationQueryRepository = specificationQueryRepository;
+        this.executor = executor;
     }
 
+    /**
+     * Fetches the page of parent batches and the dashboard totals of all matching batches. Only the filters which
+     * were supplied end up in the queries, the totals are computed by a single aggregate query.
+     * @param startFrom lower bound of startedAt, may be null
+     * @param startTo upper bound of startedAt, may be null
+     */
     @Override
+    @ReadReplica
     public BatchPaginatedResponse getBatch(String startFrom, String startTo, String registeringInstitutionId, String payerFsp, String batchId, PageRequest pager) {
+        Specifications<Batch> spec = BatchSpecs.isParentBatch();
+        if (BatchSpecs.isFilter(registeringInstitutionId)) {
+            spec = spec.and(BatchSpecs.matchPattern(Batch_.registeringInstitutionId, registeringInstitutionId));
+        }
+        if (BatchSpecs.isFilter(payerFsp)) {
+            spec = spec.and(BatchSpecs.matchPattern(Batch_.payerFsp, payerFsp));
+        }
+        if (BatchSpecs.isFilter(batchId)) {
+            spec = spec.and(BatchSpecs.matchPattern(Batch_.batchId, batchId));
+        }
         try {
-            Date startDateObject = dateFormat().parse(startFrom);
-            Date endDateObject = dateFormat().parse(startTo);
-            TenantServerConnection connection = ThreadLocalContextUtil.getTenant();
-
-            CompletableFuture<Optional<Long>> totalTransactionsAsync =
-                    CompletableFuture.supplyAsync(() -> {
-                        ThreadLocalContextUtil.setTenant(connection);
-                        return batchRepository.getTotalTransactionsDateBetween(
-                                startDateObject, endDateObject,
-                                registeringInstitutionId, payerFsp, batchId);
-                    });
-            CompletableFuture<Optional<Long>> totalAmountAsync =
-                    CompletableFuture.supplyAsync(() -> {
-                        ThreadLocalContextUtil.setTenant(connection);
-                        return batchRepository.getTotalAmountDateBetween(
-                                startDateObject, endDateObject,
-                                registeringInstitutionId, payerFsp, batchId);
-                    });
-            CompletableFuture<Optional<Long>> totalBatchesAsync =
-                    CompletableFuture.supplyAsync(() -> {
-                        ThreadLocalContextUtil.setTenant(connection);
-                        return batchRepository.getTotalBatchesDateBetween(
-                                startDateObject, endDateObject,
-                                registeringInstitutionId, payerFsp, batchId);
-                    });
-            CompletableFuture<Optional<Long>> totalApprovedCountAsync =
-                    CompletableFuture.supplyAsync(() -> {
-                        ThreadLocalContextUtil.setTenant(connection);
-                        return batchRepository.getTotalApprovedCountDateBetween(
-                                startDateObject, endDateObject,
-                                registeringInstitutionId, payerFsp, batchId);
-                    });
-            CompletableFuture<Optional<Long>> totalApprovedAmountAsync =
-                    CompletableFuture.supplyAsync(() -> {
-                        ThreadLocalContextUtil.setTenant(connection);
-                        return batchRepository.getTotalApprovedAmountDateBetween(
-                                startDateObject, endDateObject,
-                                registeringInstitutionId, payerFsp, batchId);
-                    });
-            CompletableFuture<List<Batch>> batchesAsync =
-                    CompletableFuture.supplyAsync(() -> {
-                        ThreadLocalContextUtil.setTenant(connection);
-                        return batchRepository.findAllFilterDateBetween(
-                                startDateObject, endDateObject,
-                                registeringInstitutionId, payerFsp, batchId,
-                                pager);
-                    });
-
-            CompletableFuture<Void> allTasks = CompletableFuture.allOf(totalTransactionsAsync, totalAmountAsync,
-                    totalBatchesAsync, totalApprovedCountAsync, totalApprovedAmountAsync, batchesAsync);
-            allTasks.join();
-
-            Optional<Long> totalTransactions = totalTransactionsAsync.join();
-            Optional<Long> totalAmount = totalAmountAsync.join();
-            Optional<Long> totalBatches = totalBatchesAsync.join();
-            Optional<Long> totalApprovedCount = totalApprovedCountAsync.join();
-            Optional<Long> totalApprovedAmount = totalApprovedAmountAsync.join();
-            List<Batch> batches = batchesAsync.join();
-
-            return getBatchPaginatedResponseInstance(totalBatches.orElse(0L), totalTransactions.orElse(0L),
-                    totalAmount.orElse(0L), totalApprovedCount.orElse(0L),
-                    totalApprovedAmount.orElse(0L), 10, batches);
-        } catch (Exception e) {
+            if (startFrom != null && startTo != null) {
+                spec = spec.and(BatchSpecs.between(Batch_.startedAt, dateFormat().parse(startFrom), dateFormat().parse(startTo)));
+            } else if (startFrom != null) {
+                spec = spec.and(BatchSpecs.later(Batch_.startedAt, dateFormat().parse(startFrom)));
+            } else if (startTo != null) {
+                spec = spec.and(BatchSpecs.earlier(Batch_.startedAt, dateFormat().parse(startTo)));
+            }
+        } catch (ParseException e) {
             log.warn("failed to parse dates {} / {}", startFrom, startTo);
             return null;
         }
-    }
-
-    @Override
-    public BatchPaginatedResponse getBatch(String registeringInstitutionId, String payerFsp, String batchId, PageRequest pager) {
-        log.info("Get batch function");
-        TenantServerConnection connection = ThreadLocalContextUtil.getTenant();
-
-        CompletableFuture<Optional<Long>> totalTransactionsAsync = CompletableFuture.supplyAsync(() -> {
-            ThreadLocalContextUtil.setTenant(connection);
-            return batchRepository.getTotalTransactions(registeringInstitutionId, payerFsp, batchId);
-        });
-        CompletableFuture<Optional<Long>> totalAmountAsync = CompletableFuture.supplyAsync(() -> {
-            ThreadLocalContextUtil.setTenant(connection);
-            return batchRepository.getTotalAmount(registeringInstitutionId, payerFsp, batchId);
-        });
-        CompletableFuture<Optional<Long>> totalBatchesAsync = CompletableFuture.supplyAsync(() -> {
-            ThreadLocalContextUtil.setTenant(connection);
-            return batchRepository.getTotalBatches(registeringInstitutionId, payerFsp, batchId);
-        });
-        CompletableFuture<Optional<Long>> totalApprovedCountAsync = CompletableFuture.supplyAsync(() -> {
-            ThreadLocalContextUtil.setTenant(connection);
-            return batchRepository.getTotalApprovedCount(registeringInstitutionId, payerFsp, batchId);
-        });
-        CompletableFuture<Optional<Long>> totalApprovedAmountAsync = CompletableFuture.supplyAsync(() -> {
-            ThreadLocalContextUtil.setTenant(connection);
-            return batchRepository.getTotalApprovedAmount(registeringInstitutionId, payerFsp, batchId);
-        });
-        CompletableFuture<List<Batch>> batchesAsync = CompletableFuture.supplyAsync(() -> {
-            ThreadLocalContextUtil.setTenant(connection);
-            return batchRepository.findAllBatch(registeringInstitutionId, payerFsp, batchId, pager);
-        });
+        Specifications<Batch> filterSpec = spec;
 
-        CompletableFuture<Void> allTasks = CompletableFuture.allOf(totalTransactionsAsync, totalAmountAsync,
-                totalBatchesAsync, totalApprovedCountAsync, totalApprovedAmountAsync, batchesAsync);
-        allTasks.join();
+        CompletableFuture<Object[]> totalsAsync = CompletableFuture.supplyAsync(() ->
+                specificationQueryRepository.countAndSum(Batch.class, filterSpec,
+                        "totalTransactions", "totalAmount", "approvedCount", "approvedAmount"), executor);
+        CompletableFuture<List<Batch>> batchesAsync = CompletableFuture.supplyAsync(() ->
+                specificationQueryRepository.findAll(Batch.class, filterSpec, pager), executor);
 
-        Optional<Long> totalTransactions = totalTransactionsAsync.join();
-        Optional<Long> totalAmount = totalAmountAsync.join();
-        Optional<Long> totalBatches = totalBatchesAsync.join();
-        Optional<Long> totalApprovedCount = totalApprovedCountAsync.join();
-        Optional<Long> totalApprovedAmount = totalApprovedAmountAsync.join();
+        Object[] totals = totalsAsync.join();
         List<Batch> batches = batchesAsync.join();
-        return getBatchPaginatedResponseInstance(totalBatches.orElse(0L), totalTransactions.orElse(0L),
-                totalAmount.orElse(0L), totalApprovedCount.orElse(0L),
-                totalApprovedAmount.orElse(0L), 10, batches);
+        return getBatchPaginatedResponseInstance(total(totals[0]), total(totals[1]), total(totals[2]),
+                total(totals[3]), total(totals[4]), 10, batches);
     }
 
-    @Override
-    public BatchPaginatedResponse getBatchDateTo(String startTo, String registeringInstitutionId, String payerFsp, String batchId, PageRequest pager) {
-        try {
-            Date endDateObject = dateFormat().parse(startTo);
-            TenantServerConnection connection = ThreadLocalContextUtil.getTenant();
-
-            CompletableFuture<Optional<Long>> totalTransactionsAsync = CompletableFuture.supplyAsync(() -> {
-               ThreadLocalContextUtil.setTenant(connection);
-               return batchRepository.getTotalTransactionsDateTo(
-                       endDateObject,
-                       registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalAmountAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return batchRepository.getTotalAmountDateTo(
-                        endDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalBatchesAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return batchRepository.getTotalBatchesDateTo(
-                        endDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalApprovedCountAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return batchRepository.getTotalApprovedCountDateTo(
-                        endDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalApprovedAmountAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return batchRepository.getTotalApprovedAmountDateTo(
-                        endDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<List<Batch>> batchesAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return batchRepository.findAllFilterDateTo(
-                        endDateObject,
-                        registeringInstitutionId, payerFsp, batchId, pager);
-            });
-
-            CompletableFuture<Void> allTasks = CompletableFuture.allOf(totalTransactionsAsync, totalAmountAsync,
-                    totalBatchesAsync, totalApprovedCountAsync, totalApprovedAmountAsync, batchesAsync);
-            allTasks.join();
-
-            Optional<Long> totalTransactions = totalTransactionsAsync.join();
-            Optional<Long> totalAmount = totalAmountAsync.join();
-            Optional<Long> totalBatches = totalBatchesAsync.join();
-            Optional<Long> totalApprovedCount = totalApprovedCountAsync.join();
-            Optional<Long> totalApprovedAmount = totalApprovedAmountAsync.join();
-            List<Batch> batches = batchesAsync.join();
-            return getBatchPaginatedResponseInstance(totalBatches.orElse(0L), totalTransactions.orElse(0L),
-                    totalAmount.orElse(0L), totalApprovedCount.orElse(0L),
-                    totalApprovedAmount.orElse(0L), 10, batches);
-        } catch (Exception e) {
-            log.warn("failed to parse startTo date {}", startTo);
-            return null;
-        }
-    }
-
-    @Override
-    public BatchPaginatedResponse getBatchDateFrom(String startFrom, String registeringInstitutionId, String payerFsp, String batchId, PageRequest pager) {
-        try {
-            Date startDateObject = dateFormat().parse(startFrom);
-            TenantServerConnection connection = ThreadLocalContextUtil.getTenant();
-
-            CompletableFuture<Optional<Long>> totalTransactionsAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return  batchRepository.getTotalTransactionsDateFrom(
-                        startDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalAmountAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return  batchRepository.getTotalAmountDateFrom(
-                        startDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalBatchesAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return  batchRepository.getTotalBatchesDateFrom(
-                        startDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalApprovedCountAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return  batchRepository.getTotalApprovedCountDateFrom(
-                        startDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<Optional<Long>> totalApprovedAmountAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return  batchRepository.getTotalApprovedAmountDateFrom(
-                        startDateObject,
-                        registeringInstitutionId, payerFsp, batchId);
-            });
-            CompletableFuture<List<Batch>> batchesAsync = CompletableFuture.supplyAsync(() -> {
-                ThreadLocalContextUtil.setTenant(connection);
-                return batchRepository.findAllFilterDateFrom(
-                        startDateObject,
-                        registeringInstitutionId, payerFsp, batchId, pager);
-            });
-
-            CompletableFuture<Void> allTasks = CompletableFuture.allOf(totalTransactionsAsync, totalAmountAsync,
-                    totalBatchesAsync, totalApprovedCountAsync, totalApprovedAmountAsync, batchesAsync);
-            allTasks.join();
-
-            Optional<Long> totalTransactions = totalTransactionsAsync.join();
-            Optional<Long> totalAmount = totalAmountAsync.join();
-            Optional<Long> totalBatches = totalBatchesAsync.join();
-            Optional<Long> totalApprovedCount = totalApprovedCountAsync.join();
-            Optional<Long> totalApprovedAmount = totalApprovedAmountAsync.join();
-            List<Batch> batches = batchesAsync.join();
-            return getBatchPaginatedResponseInstance(totalBatches.orElse(0L), totalTransactions.orElse(0L),
-                    totalAmount.orElse(0L), totalApprovedCount.orElse(0L),
-                    totalApprovedAmount.orElse(0L), 10, batches);
-        } catch (Exception e) {
-            log.warn("failed to parse startFrom date {}", startFrom);
-            return null;
-        }
+    private static long total(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
     }
 
-
     private BatchPaginatedResponse getBatchPaginatedResponseInstance(long totalBatches, long totalTransactions,
                                                                      long totalAmount, long totalApprovedCount,
                                                                      long totalApprovedAmount,
@@ -0,0 +1,10 @@
+package org.apache.fineract.service;
+
+import org.apache.fineract.operations.Batch;
+
+public interface BatchRefreshService {
+
+    Batch refreshBatch(String batchId);
+
+    void refreshInProgressBatches();
+}
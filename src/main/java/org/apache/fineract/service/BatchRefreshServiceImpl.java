@@ -0,0 +1,325 @@
+package org.apache.fineract.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fineract.config.AsyncConfig;
+import org.apache.fineract.core.service.TenantDatabaseUpgradeService;
+import org.apache.fineract.core.service.ThreadLocalContextUtil;
+import org.apache.fineract.file.FileTransferService;
+import org.apache.fineract.operations.Batch;
+import org.apache.fineract.operations.BatchRepository;
+import org.apache.fineract.operations.BatchStatus;
+import org.apache.fineract.operations.SpecificationQueryRepository;
+import org.apache.fineract.operations.Transfer;
+import org.apache.fineract.operations.TransferSpecs;
+import org.apache.fineract.operations.Transfer_;
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.apache.fineract.organisation.tenant.TenantServerConnectionRepository;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps the summary counters of the batches table up to date, so the batch endpoints serve the stored rows instead
+ * of recomputing them on every poll. The batches which are not finished yet are refreshed every [interval-ms] for
+ * every tenant. A batch is refreshed by one instance at a time: the refresh takes the lease of the batch row for
+ * [leaseMs] first and skips the batch when another refresh, scheduled or inline, holds it. The batches are refreshed
+ * on the [AsyncConfig.REPOSITORY_EXECUTOR], at most [maxConcurrent] at a time so the refresh never takes all the
+ * threads of the requests.
+ * A batch only reaches a terminal status once none of its transfers is ongoing and their number did not change for
+ * [settleMs], until then it is refreshed again on every pass while its transfers are imported. A batch still without
+ * transfer after [emptySettleMs] is failed.
+ */
+@Slf4j
+@Service
+public class BatchRefreshServiceImpl implements BatchRefreshService {
+
+    private static final Set<BatchStatus> TERMINAL_STATUSES = EnumSet.of(BatchStatus.COMPLETED, BatchStatus.FAILED);
+
+    private static final Set<BatchStatus> UNFINISHED_STATUSES = EnumSet.of(BatchStatus.IN_PROGRESS, BatchStatus.UNKNOWN);
+
+    private static final String CSV_SEPARATOR = ",";
+
+    private static final String[] RESULT_FILE_ATTRIBUTES = {"transactionId", "status", "payeeDfspId", "payeePartyId",
+            "payerDfspId", "payerPartyId", "amount", "currency", "errorInformation", "startedAt", "completedAt"};
+
+    @Autowired
+    private TenantServerConnectionRepository tenantRepository;
+
+    @Autowired
+    private TenantDatabaseUpgradeService upgradeService;
+
+    @Autowired
+    private BatchRepository batchRepository;
+
+    @Autowired
+    private SpecificationQueryRepository specificationQueryRepository;
+
+    @Autowired
+    private BatchSummaryService batchSummaryService;
+
+    @Autowired
+    private BeanFactory beanFactory;
+
+    @Value("${batch.refresh.storage}")
+    private String storage;
+
+    private FileTransferService fileTransferService;
+
+    @Autowired
+    @Qualifier(AsyncConfig.REPOSITORY_EXECUTOR)
+    private Executor executor;
+
+    @Value("${application.bucket-name}")
+    private String bucketName;
+
+    @Value("${batch.refresh.lease-ms}")
+    private long leaseMs;
+
+    @Value("${batch.refresh.settle-ms}")
+    private long settleMs;
+
+    @Value("${batch.refresh.empty-settle-ms}")
+    private long emptySettleMs;
+
+    @Value("${batch.refresh.max-concurrent}")
+    private int maxConcurrent;
+
+    @PostConstruct
+    public void init() {
+        fileTransferService = BeanFactoryAnnotationUtils.qualifiedBeanOfType(beanFactory, FileTransferService.class, storage);
+    }
+
+    @Scheduled(fixedDelayString = "${batch.refresh.interval-ms}")
+    public void refreshAllTenants() {
+        for (TenantServerConnection tenant : tenantRepository.findAll()) {
+            try {
+                ThreadLocalContextUtil.setTenant(tenant);
+                if (!upgradeService.ensureMigrated(tenant)) {
+                    continue;
+                }
+                refreshInProgressBatches();
+            } catch (Exception e) {
+                log.warn("failed to refresh the batches of tenant {}", tenant.getSchemaName(), e);
+            } finally {
+                ThreadLocalContextUtil.clear();
+            }
+        }
+    }
+
+    /**
+     * Refreshes every batch of the current tenant which is not finished, was never summarized or was completed
+     * without transfer by an older summary, and waits for all of them to finish
+     */
+    @Override
+    public void refreshInProgressBatches() {
+        List<String> batchIds = batchRepository.findBatchIdsToRefresh(UNFINISHED_STATUSES, BatchStatus.COMPLETED);
+        if (batchIds.isEmpty()) {
+            return;
+        }
+        Semaphore permits = new Semaphore(maxConcurrent);
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>(batchIds.size());
+        try {
+            for (String batchId : batchIds) {
+                permits.acquire();
+                try {
+                    refreshes.add(CompletableFuture.runAsync(() -> refreshBatchSafely(batchId), executor)
+                            .whenComplete((result, e) -> permits.release()));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    log.warn("repository executor is full, batch {} is refreshed on the next pass", batchId);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            CompletableFuture.allOf(refreshes.toArray(new CompletableFuture[0])).join();
+        }
+        log.debug("refreshed {} batches", refreshes.size());
+    }
+
+    /*
+     * the exceptions are logged here so one failing batch does not stop the pass
+     */
+    private void refreshBatchSafely(String batchId) {
+        try {
+            refreshBatch(batchId);
+        } catch (Exception e) {
+            log.warn("failed to refresh batch {}", batchId, e);
+        }
+    }
+
+    /**
+     * Refreshes and saves the batch and sub batches of [batchId] under the refresh lease of the batch, then sums the
+     * sub batches into the parent batch, @see [BatchSummaryService.refreshBatchSummaries]
+     * @return the parent batch, null when another refresh holds the lease
+     */
+    @Override
+    public Batch refreshBatch(String batchId) {
+        String owner = UUID.randomUUID().toString();
+        Date now = new Date();
+        if (batchRepository.acquireRefreshLease(batchId, owner, new Date(now.getTime() + leaseMs), now) == 0) {
+            log.debug("batch {} is already being refreshed", batchId);
+            return null;
+        }
+        try {
+            return refreshBatch(batchRepository.findAllByBatchId(batchId));
+        } finally {
+            batchRepository.releaseRefreshLease(batchId, owner);
+        }
+    }
+
+    private Batch refreshBatch(List<Batch> batches) {
+        batchSummaryService.refreshBatchSummaries(batches);
+        Date now = new Date();
+        for (Batch batch : batches) {
+            saveBatch(batch, batch.getCompleted(), batch.getOngoing(), batch.getFailed(), batch.getTotalTransactions(),
+                    batch.getTotalAmount(), batch.getCompletedAmount(), batch.getOngoingAmount(), batch.getFailedAmount(),
+                    isSettled(batch, now, settleMs, emptySettleMs));
+        }
+        if (batches.size() == 1) {
+            return batches.get(0);
+        }
+        return getParentBatchSummary(batches);
+    }
+
+    private Batch getParentBatchSummary(List<Batch> batches) {
+        Long subBatchFailed = 0L;
+        Long subBatchCompleted = 0L;
+        Long subBatchOngoing = 0L;
+        Long subBatchTotal = 0L;
+
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal completedAmount = BigDecimal.ZERO;
+        BigDecimal ongoingAmount = BigDecimal.ZERO;
+        BigDecimal failedAmount = BigDecimal.ZERO;
+        Batch parentBatch = null;
+        boolean subBatchesFinished = true;
+
+        for (Batch bt : batches) {
+            if (bt.getSubBatchId() == null || bt.getSubBatchId().isEmpty()) {
+                parentBatch = bt;
+                continue;
+            }
+            subBatchesFinished &= TERMINAL_STATUSES.contains(bt.getStatus());
+            if (bt.getFailed() != null) {
+                subBatchFailed += bt.getFailed();
+                failedAmount = failedAmount.add(BigDecimal.valueOf(bt.getFailedAmount()));
+            }
+            if (bt.getCompleted() != null) {
+                subBatchCompleted += bt.getCompleted();
+                completedAmount = completedAmount.add(BigDecimal.valueOf(bt.getCompletedAmount()));
+            }
+            if (bt.getOngoing() != null) {
+                subBatchOngoing += bt.getOngoing();
+                ongoingAmount = ongoingAmount.add(BigDecimal.valueOf(bt.getOngoingAmount()));
+            }
+            if (bt.getTotalTransactions() != null) {
+                subBatchTotal += bt.getTotalTransactions();
+                totalAmount = totalAmount.add(BigDecimal.valueOf(bt.getTotalAmount()));
+            }
+        }
+        saveBatch(parentBatch, subBatchCompleted, subBatchOngoing, subBatchFailed, subBatchTotal,
+                totalAmount.longValue(), completedAmount.longValue(), ongoingAmount.longValue(), failedAmount.longValue(),
+                subBatchesFinished);
+        return parentBatch;
+    }
+
+    private void saveBatch(Batch batch, Long completed, Long ongoing, Long failed,
+                           Long totalTransfers, Long totalAmount, Long totalCompletedAmount,
+                           Long totalOngoingAmount, Long totalFailedAmount, boolean settled) {
+        batch.setCompleted(completed);
+        batch.setFailed(failed);
+        batch.setResultGeneratedAt(new Date());
+        batch.setOngoing(ongoing);
+        batch.setTotalTransactions(totalTransfers);
+        batch.setTotalAmount(totalAmount);
+        batch.setCompletedAmount(totalCompletedAmount);
+        batch.setOngoingAmount(totalOngoingAmount);
+        batch.setFailedAmount(totalFailedAmount);
+        batch.setCompletedAt(new Date());
+        batch.setStatus(status(completed, ongoing, failed, totalTransfers, settled));
+        if (TERMINAL_STATUSES.contains(batch.getStatus())
+                && (batch.getResult_file() == null || batch.getResult_file().isEmpty())) {
+            batch.setResult_file(createDetailsFile(batch.getSubBatchId() != null ? batch.getSubBatchId() : batch.getBatchId()));
+        }
+        batchSummaryService.storePayeeFsps(batch);
+        batchRepository.save(batch);
+    }
+
+    /*
+     * a batch with ongoing transfers or whose transfers are still being imported is in progress, whatever its
+     * counters say, a settled batch without transfer never got any
+     */
+    static BatchStatus status(long completed, long ongoing, long failed, long totalTransfers, boolean settled) {
+        if (ongoing > 0 || !settled) {
+            return BatchStatus.IN_PROGRESS;
+        }
+        if (totalTransfers == 0) {
+            return BatchStatus.FAILED;
+        }
+        if (completed == totalTransfers) {
+            return BatchStatus.COMPLETED;
+        }
+        return failed > 0 ? BatchStatus.FAILED : BatchStatus.IN_PROGRESS;
+    }
+
+    /*
+     * the number of transfers of the batch did not change for [settleMs], or for [emptySettleMs] while it has none
+     */
+    static boolean isSettled(Batch batch, Date now, long settleMs, long emptySettleMs) {
+        long window = batch.getTotalTransactions() == null || batch.getTotalTransactions() == 0 ? emptySettleMs : settleMs;
+        return batch.getTotalChangedAt() != null && now.getTime() - batch.getTotalChangedAt().getTime() >= window;
+    }
+
+    /*
+     * the result file is only built once the batch is finished, so it is complete and built once, the transfers are
+     * streamed into it instead of being loaded at once
+     * @return the name of the uploaded file, null when it could not be built so the next refresh retries
+     */
+    private String createDetailsFile(String batchId) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(batchId + "_", "_response.csv");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                specificationQueryRepository.streamAttributes(Transfer.class, TransferSpecs.match(Transfer_.batchId, batchId),
+                        row -> {
+                            StringBuilder line = new StringBuilder();
+                            for (Object value : row) {
+                                line.append(value == null ? "" : value).append(CSV_SEPARATOR);
+                            }
+                            writer.write(line.toString());
+                            writer.newLine();
+                        }, RESULT_FILE_ATTRIBUTES);
+            }
+            return fileTransferService.uploadFile(tempFile, bucketName);
+        } catch (Exception e) {
+            log.error("failed to create the result file of batch {}", batchId, e);
+            return null;
+        } finally {
+            if (tempFile != null && !tempFile.delete()) {
+                log.warn("failed to delete the result file {}", tempFile);
+            }
+        }
+    }
+}
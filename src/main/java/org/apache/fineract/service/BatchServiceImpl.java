@@ -1,10 +1,17 @@
 package org.apache.fineract.service;
 
 import lombok.extern.slf4j.Slf4j;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apache.fineract.config.AsyncConfig;
+import org.apache.fineract.config.DetailCacheConfig;
+import org.apache.fineract.core.service.ReadReplica;
 import org.apache.fineract.operations.*;
 import org.apache.fineract.response.BatchAndSubBatchSummaryResponse;
 import org.apache.fineract.response.SubBatchSummary;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -18,22 +25,62 @@ import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
+@ReadReplica
 public class BatchServiceImpl implements BatchService{
-    
+
+    private static final Set<BatchStatus> TERMINAL_BATCH_STATUSES = EnumSet.of(BatchStatus.COMPLETED, BatchStatus.FAILED);
+
+    /**
+     * sortable fields of the instructions and the [Transfer] property they are sorted on in SQL
+     */
+    private static final Map<String, String> INSTRUCTION_SORT_COLUMNS = new HashMap<>();
+
+    static {
+        INSTRUCTION_SORT_COLUMNS.put("instructionId", "transactionId");
+        INSTRUCTION_SORT_COLUMNS.put("payeeFunctionalId", "payeePartyId");
+        INSTRUCTION_SORT_COLUMNS.put("payerFsp", "payerDfspId");
+        INSTRUCTION_SORT_COLUMNS.put("amount", "amount");
+        INSTRUCTION_SORT_COLUMNS.put("status", "status");
+        INSTRUCTION_SORT_COLUMNS.put("startedAt", "startedAt");
+        INSTRUCTION_SORT_COLUMNS.put("completedAt", "completedAt");
+        INSTRUCTION_SORT_COLUMNS.put("subBatchId", "batchId");
+    }
+
     @Autowired
     private BatchRepository batchRepository;
     @Autowired
     private TransferRepository transferRepository;
-    private static long subBatchAmount;
-    private static long subBatchCount;
-    private static Set<String> payeeFspSet;
-
+    @Autowired
+    private SpecificationQueryRepository specificationQueryRepository;
+    @Autowired
+    @Qualifier(DetailCacheConfig.DETAIL_CACHE_MANAGER)
+    private CacheManager detailCacheManager;
+    @Autowired
+    @Qualifier(AsyncConfig.REPOSITORY_EXECUTOR)
+    private Executor executor;
+    @Autowired
+    private BatchSummaryService batchSummaryService;
 
+    /**
+     * The summary of a batch whose batch and sub batches all reached a terminal state does not change anymore,
+     * it is served from the [DetailCacheConfig.CACHE_BATCH_SUMMARY] cache of the tenant. The cache keeps its own
+     * copy of the response and hands out copies, so the callers setting the modes never change the cached entry
+     */
     @Override
     public BatchAndSubBatchSummaryResponse getBatchAndSubBatchSummary(String batchId, String clientCorrelationId) {
+        Ehcache summaryCache = detailCacheManager.getEhcache(DetailCacheConfig.CACHE_BATCH_SUMMARY);
+        String cacheKey = DetailCacheConfig.tenantKey(batchId);
+        Element cached = summaryCache.get(cacheKey);
+        if (cached != null) {
+            return ((BatchAndSubBatchSummaryResponse) cached.getObjectValue()).copy();
+        }
 
         List<Batch> batchAndSubBatches = batchRepository.findAllByBatchId(batchId);
 
@@ -42,24 +89,39 @@ public class BatchServiceImpl implements BatchService{
         }
 
         BatchAndSubBatchSummaryResponse response = new BatchAndSubBatchSummaryResponse();
-        subBatchCount=0;
-        subBatchAmount=0;
+        long subBatchCount = 0;
+        long subBatchAmount = 0;
         Long totalSubBatch = 0L;
 
-        for(Batch batch : batchAndSubBatches){
-            if(StringUtils.isEmpty(batch.getSubBatchId())){
+        // the sub batch summaries are computed concurrently while the batch itself is summarized on this thread
+        List<CompletableFuture<SubBatchSummary>> subBatchSummaries = new ArrayList<>();
+        for (Batch batch : batchAndSubBatches) {
+            if (!StringUtils.isEmpty(batch.getSubBatchId())) {
+                subBatchSummaries.add(supplyAsync(() -> generateSubBatchSummary(batch)));
+                subBatchAmount += batch.getApprovedAmount() != null ? batch.getApprovedAmount() : 0;
+                subBatchCount += batch.getApprovedCount() != null ? batch.getApprovedCount() : 0;
+                totalSubBatch++;
+            }
+        }
+        for (Batch batch : batchAndSubBatches) {
+            if (StringUtils.isEmpty(batch.getSubBatchId())) {
                 updateResponseWithBatchInfo(batch, response);
             }
-            else{
-                SubBatchSummary subBatchSummary = updateResponseWithSubBatchInfo(batch, response);
-                totalSubBatch++;
-                response.getSubBatchSummaryList().add(subBatchSummary);
+        }
+        if (!subBatchSummaries.isEmpty()) {
+            List<SubBatchSummary> subBatchSummaryList = new ArrayList<>(subBatchSummaries.size());
+            for (CompletableFuture<SubBatchSummary> subBatchSummary : subBatchSummaries) {
+                subBatchSummaryList.add(subBatchSummary.join());
             }
+            response.setSubBatchSummaryList(subBatchSummaryList);
         }
         response.setApprovedTransactionCount(subBatchCount);
         response.setApprovedAmount(subBatchAmount);
         response.setTotalSubBatches(totalSubBatch);
 
+        if (batchAndSubBatches.stream().allMatch(batch -> TERMINAL_BATCH_STATUSES.contains(batch.getStatus()))) {
+            summaryCache.put(new Element(cacheKey, response.copy()));
+        }
         return response;
     }
 
@@ -73,60 +135,68 @@ public class BatchServiceImpl implements BatchService{
         }
         List<Instruction> allInstructions =  new ArrayList<>();
         PaymentBatchDetail response = new PaymentBatchDetail();
-        subBatchCount = 0;
-        subBatchAmount = 0;
         List<SubBatchSummary> subBatchSummaryList = new ArrayList<>();
         if (batchAndSubBatches.size() == 1) {
             //Batch batch = batchAndSubBatches.get(0);
             updatePaymentDetailBatchInfo(batchAndSubBatches.get(0), response);
-            int pageNumber = (offset / limit) ;
-            Page<Transfer> transferList =  transferRepository.findAllByBatchId(batchId, new PageRequest(pageNumber, limit));
-            List<Instruction>  instructionList = generateInstructionList(transferList.getContent(),orderBy,sortBy);
+            List<Transfer> transferList = findInstructions(batchId, offset, limit, orderBy, sortBy);
+            List<Instruction>  instructionList = generateInstructionList(transferList);
             response.setInstructionList(instructionList);
             response.setTotalInstruction(batchAndSubBatches.get(0).getTotalTransactions());
             return response;
         }
         Long totalInstruction = 0L;
-        for(Batch batch : batchAndSubBatches) {
+        // each sub batch is paged and summarized concurrently, the results are merged in the order of the sub batches
+        List<CompletableFuture<SubBatchPaymentDetail>> subBatchDetails = new ArrayList<>();
+        for (Batch batch : batchAndSubBatches) {
+            if (!StringUtils.isEmpty(batch.getSubBatchId())) {
+                subBatchDetails.add(supplyAsync(() -> generateSubBatchPaymentDetail(batch, offset, limit, orderBy, sortBy)));
+            }
+        }
+        for (Batch batch : batchAndSubBatches) {
             if (StringUtils.isEmpty(batch.getSubBatchId())) {
                 updatePaymentDetailBatchInfo(batch, response);
-            } else {
-                payeeFspSet = new HashSet<>();
-                int pageNumber = (offset / limit);
-                Page<Transfer> transferList =  transferRepository.findAllByBatchId(batch.getSubBatchId(), new PageRequest(pageNumber, limit));
-
-                log.info(transferList.toString());
-                List<Instruction>  instructionList = generateInstructionList(transferList.getContent(),orderBy,sortBy);
-                allInstructions.addAll(instructionList);
-
-                SubBatchSummary subBatch = updateSubBatchPaymentDetail(batch, response);
-                Long subBatchCount = transferRepository.countAllByBatchId(batch.getSubBatchId());
-                totalInstruction += subBatchCount;
-                subBatchSummaryList.add(subBatch);
-
             }
         }
-/*        updatePaymentDetailBatchInfo(batch, response);
-        for(Batch subBatches : subBatchList) {
-            payeeFspSet = new HashSet<>();
-            int pageNumber = (offset / limit);
-            Page<Transfer> transferList =  transferRepository.findAllByBatchId(batch.getSubBatchId(), new PageRequest(pageNumber, limit));
-            log.info(subBatches.getBatchId());
-            log.info(transferList.toString());
-            List<Instruction>  instructionList = generateInstructionList(transferList.getContent(),orderBy,sortBy);
-            allInstructions.addAll(instructionList);
-
-            SubBatchSummary subBatch = updateSubBatchPaymentDetail(batch, response);
-            Long subBatchCount = transferRepository.countAllByBatchId(batch.getSubBatchId());
-            totalInstruction += subBatchCount;
-            subBatchSummaryList.add(subBatch);
-        }*/
+        for (CompletableFuture<SubBatchPaymentDetail> subBatchDetailAsync : subBatchDetails) {
+            SubBatchPaymentDetail subBatchDetail = subBatchDetailAsync.join();
+            allInstructions.addAll(subBatchDetail.instructions);
+            totalInstruction += subBatchDetail.instructionCount;
+            subBatchSummaryList.add(subBatchDetail.summary);
+        }
         response.setInstructionList(allInstructions);
-        response.setTotalInstruction(subBatchCount);
+        response.setTotalInstruction(totalInstruction);
         response.setSubBatchList(subBatchSummaryList);
         return response;
     }
-    public List<Instruction> generateInstructionList(List<Transfer> transferList, String orderBy, String sortBy){
+
+    /*
+     * pages the instructions of the sub batch and summarizes it, run on the repository executor so it only
+     * touches its own state
+     */
+    private SubBatchPaymentDetail generateSubBatchPaymentDetail(Batch batch, int offset, int limit, String orderBy,
+                                                                String sortBy) {
+        List<Transfer> transferList = findInstructions(batch.getSubBatchId(), offset, limit, orderBy, sortBy);
+        List<Instruction> instructionList = generateInstructionList(transferList);
+        SubBatchSummary subBatch = updateSubBatchPaymentDetail(batch);
+        Long instructionCount = transferRepository.countAllByBatchId(batch.getSubBatchId());
+        return new SubBatchPaymentDetail(instructionList, subBatch, instructionCount);
+    }
+
+    /*
+     * runs [supplier] on the repository executor, or on the calling thread when the executor is saturated so a busy
+     * executor slows the request down instead of failing it
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            log.debug("repository executor is full, running on the calling thread");
+            return CompletableFuture.completedFuture(supplier.get());
+        }
+    }
+
+    public List<Instruction> generateInstructionList(List<Transfer> transferList){
         List<Instruction> instructionList = new ArrayList<>();
 
         for (Transfer transfer : transferList) {
@@ -140,31 +210,24 @@ public class BatchServiceImpl implements BatchService{
             instruction.setStartedAt(transfer.getStartedAt() != null ? transfer.getStartedAt() : null);
             instruction.setCompletedAt(transfer.getCompletedAt() != null ? transfer.getCompletedAt() : null);
             instruction.setSubBatchId(transfer.getBatchId() != null ? transfer.getBatchId() : null);
-            if (transfer.getPayeeDfspId() != null) {
-                payeeFspSet.add(transfer.getPayeeDfspId());
-            }
 
             instructionList.add(instruction);
         }
-        Comparator<Instruction> comparator = null;
-        Boolean validOrderBy = true;
-
-        if ("instructionId".equals(orderBy)) {
-            comparator = Comparator.comparing(Instruction::getPayerFsp);
-        } else if ("payeeFunctionalId".equals(orderBy)) {
-            comparator = Comparator.comparing(Instruction::getPayeeFunctionalId);
-        } else if ("subBatchId".equals(orderBy)) {
-            comparator = Comparator.comparing(Instruction::getAmount);
-        } else {
-            validOrderBy=false;
-        }
-
-        if ("desc".equalsIgnoreCase(sortBy)  && validOrderBy && comparator != null) {
-            comparator = comparator.reversed();
-        }
         return  instructionList;
     }
 
+    /*
+     * the [limit] transfers of the batch from the [offset]th one, sorted by the database on the whitelisted
+     * [INSTRUCTION_SORT_COLUMNS], an unknown orderBy falls back to the insertion order. Each of the columns has a
+     * (BATCH_ID, column) index so the page is read in order instead of sorting the whole batch
+     */
+    private List<Transfer> findInstructions(String batchId, int offset, int limit, String orderBy, String sortBy) {
+        Sort.Direction direction = "desc".equalsIgnoreCase(sortBy) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        String property = INSTRUCTION_SORT_COLUMNS.getOrDefault(orderBy, "id");
+        return specificationQueryRepository.findAll(Transfer.class, TransferSpecs.match(Transfer_.batchId, batchId),
+                new Sort(direction, property), offset, limit);
+    }
+
     @Override
     public SubBatchSummary getPaymentSubBatchDetail(String batchId, String subBatchId, String clientCorrelationId, int offset, int limit, String orderBy, String sortBy) {
         Batch batch = batchRepository.findBySubBatchId(subBatchId);
@@ -175,10 +238,7 @@ public class BatchServiceImpl implements BatchService{
         subBatch.setBatchId(batchId);
 
         Long totalInstructionCount = transferRepository.countAllByBatchId(subBatchId);
-        //List<Transfer> transferList = transferRepository.findAllByBatchId(subBatchId);
-        int pageNumber = (offset / limit) ;
-        List<Transfer> transferList =  transferRepository.findAllByBatchId(subBatchId);
-
+        List<Transfer> transferList = findInstructions(subBatchId, offset, limit, orderBy, sortBy);
 
         List<Instruction> instructionList = new ArrayList<>();
 
@@ -194,23 +254,6 @@ public class BatchServiceImpl implements BatchService{
             instruction.setCompletedAt(transfer.getCompletedAt() != null ? transfer.getCompletedAt() : null);
             instructionList.add(instruction);
         }
-        Comparator<Instruction> comparator = null;
-        Boolean validOrderBy = true;
-
-        if ("instructionId".equals(orderBy)) {
-            comparator = Comparator.comparing(Instruction::getPayerFsp);
-        } else if ("payeeFunctionalId".equals(orderBy)) {
-            comparator = Comparator.comparing(Instruction::getPayeeFunctionalId);
-        } else if ("subBatchId".equals(orderBy)) {
-            comparator = Comparator.comparing(Instruction::getAmount);
-        } else {
-            validOrderBy=false;
-        }
-
-        if ("desc".equalsIgnoreCase(sortBy)  && validOrderBy && comparator != null) {
-            comparator = comparator.reversed();
-        }
-
         subBatch.setInstructionList(instructionList);
         subBatch.setTotalInstructionCount(totalInstructionCount);
         subBatch.setTotalAmount(subBatch.getTotalAmount());
@@ -238,29 +281,28 @@ public class BatchServiceImpl implements BatchService{
         response.setFailedAmount(BigDecimal.valueOf(batch.getFailedAmount()));
         response.setPendingAmount(BigDecimal.valueOf(batch.getOngoingAmount()));
     }
-    private SubBatchSummary updateSubBatchPaymentDetail(Batch batch, PaymentBatchDetail response){
+    private SubBatchSummary updateSubBatchPaymentDetail(Batch batch){
         SubBatchSummary subBatch = new SubBatchSummary();
         subBatch.setSubBatchId(batch.getSubBatchId());
         subBatch.setPayerFsp(batch.getPayerFsp());
-        List<Transfer> transferList = transferRepository.findAllByBatchId(batch.getSubBatchId());
-        if(!transferList.isEmpty()) {
-            subBatch.setBudgetAccount(transferList.get(0).getPayerPartyId() != null ? transferList.get(0).getPayerPartyId() : null);
+        List<String> payerPartyIds = transferRepository.findPayerPartyIdsByBatchId(batch.getSubBatchId(), PageRequest.of(0, 1));
+        if(!payerPartyIds.isEmpty()) {
+            subBatch.setBudgetAccount(payerPartyIds.get(0));
         }
         subBatch.setTotalAmount(batch.getTotalAmount()!=null? BigDecimal.valueOf(batch.getTotalAmount()): BigDecimal.valueOf(0));
         subBatch.setTotal(batch.getTotalTransactions()!=null ? batch.getTotalTransactions(): 0 );
-        subBatch.setPayeeFspSet(payeeFspSet);
+        subBatch.setPayeeFspSet(batchSummaryService.getPayeeFsps(batch));
         return subBatch;
     }
 
-    private SubBatchSummary updateResponseWithSubBatchInfo(Batch batch, BatchAndSubBatchSummaryResponse response) {
+    /*
+     * summarizes the sub batch, run on the repository executor so it only touches its own state
+     */
+    private SubBatchSummary generateSubBatchSummary(Batch batch) {
         double batchFailedPercent = 0;
         double batchSuccessPercent = 0;
 
         if (batch != null) {
-            if (CollectionUtils.isEmpty(response.getSubBatchSummaryList())) {
-                response.setSubBatchSummaryList(new ArrayList<>());
-            }
-
             if (batch.getTotalTransactions() != null) {
                 batchFailedPercent = ((double) batch.getFailed()) / batch.getTotalTransactions() * 100;
                 batchSuccessPercent = ((double) batch.getCompleted()) / batch.getTotalTransactions() * 100;
@@ -293,14 +335,7 @@ public class BatchServiceImpl implements BatchService{
             subBatchSummary.setApprovedAmount(batch.getApprovedAmount());
             subBatchSummary.setApprovedTransactionCount(batch.getApprovedCount());
             subBatchSummary.setPayerFsp(batch.getPayerFsp());
-            subBatchAmount += batch.getApprovedAmount() != null ? batch.getApprovedAmount() : 0;
-            subBatchCount += batch.getApprovedCount() != null ? batch.getApprovedCount() : 0;
-            List<Transfer> transferList =  transferRepository.findAllByBatchId(batch.getSubBatchId());
-            Set<String> payeeFspSet = new HashSet<>();
-            for (Transfer transfer : transferList) {
-                payeeFspSet.add(transfer.getPayeeDfspId());
-            }
-            subBatchSummary.setPayeeFspSet(payeeFspSet);
+            subBatchSummary.setPayeeFspSet(batchSummaryService.getPayeeFsps(batch));
             subBatchSummary.setStartedAt(batch.getStartedAt());
             subBatchSummary.setCompletedAt(batch.getCompletedAt());
             subBatchSummary.setStatus(String.valueOf(batch.getStatus()));
@@ -357,4 +392,16 @@ public class BatchServiceImpl implements BatchService{
 
         }
     }
+
+    private static final class SubBatchPaymentDetail {
+        private final List<Instruction> instructions;
+        private final SubBatchSummary summary;
+        private final Long instructionCount;
+
+        private SubBatchPaymentDetail(List<Instruction> instructions, SubBatchSummary summary, Long instructionCount) {
+            this.instructions = instructions;
+            this.summary = summary;
+            this.instructionCount = instructionCount;
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package org.apache.fineract.service;
+
+import org.apache.fineract.operations.Batch;
+
+import java.util.List;
+import java.util.Set;
+
+public interface BatchSummaryService {
+    void refreshBatchSummaries(List<Batch> batches);
+
+    Set<String> getPayeeFsps(Batch subBatch);
+
+    void storePayeeFsps(Batch subBatch);
+}
@@ -0,0 +1,338 @@
+package org.apache.fineract.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fineract.config.PaymentModeConfiguration;
+import org.apache.fineract.operations.Batch;
+import org.apache.fineract.operations.BatchRepository;
+import org.apache.fineract.operations.BatchStatus;
+import org.apache.fineract.operations.TransferRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.fineract.core.service.OperatorUtils.strip;
+
+@Slf4j
+@Service
+public class BatchSummaryServiceImpl implements BatchSummaryService {
+
+    private static final int PAYEE_FSPS_LENGTH = 1024;
+
+    private static final Set<BatchStatus> TERMINAL_STATUSES = EnumSet.of(BatchStatus.COMPLETED, BatchStatus.FAILED);
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private BatchRepository batchRepository;
+
+    @Autowired
+    private PaymentModeConfiguration paymentModeConfig;
+
+    @Value("${batch.summary.completion-lag-ms}")
+    private long completionLagMs;
+
+    @Value("${batch.summary.reconcile-interval-ms}")
+    private long reconcileIntervalMs;
+
+    /**
+     * Brings the counters of the [batches] up to date. Between two reconciles only what changed since their
+     * watermarks is folded in: the transfers inserted after [Batch.lastTransferId] and the transfers which completed
+     * after [Batch.lastCompletedAt]. The watermarks miss the transfers committed out of id order, the completions
+     * written late and the paymentMode variables imported after their transfer, so the counters of a batch are
+     * recomputed from all its transfers when it has no watermark yet, every [reconcileIntervalMs], and whenever the
+     * folded counters show no ongoing transfer: a batch is only seen as finished on reconciled counters.
+     * Completions are only taken into account [completionLagMs] after they happen, so that a transfer completed
+     * while the refresh runs is moved from ongoing on the next refresh instead of being lost.
+     * The rows of the batches are locked for the whole refresh, so concurrent refreshes fold their changes one after
+     * the other. The counters are saved before the lock is released and also updated on the passed entities.
+     * [Batch.totalChangedAt] is moved whenever the number of transfers changed, so the callers can tell whether the
+     * import of the transfers is over, see [markTotalChanged].
+     */
+    @Override
+    @Transactional
+    public void refreshBatchSummaries(List<Batch> batches) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        Date cutoff = new Date(now.getTime() - completionLagMs);
+        Map<Long, Batch> batchById = new HashMap<>();
+        for (Batch batch : batches) {
+            batchById.put(batch.getId(), batch);
+        }
+        List<Long> foldedIds = new ArrayList<>();
+        List<Long> reconciledIds = new ArrayList<>();
+        Map<Long, Long> previousTotals = new HashMap<>();
+        for (Batch lockedBatch : batchRepository.findAndLockByIdIn(batchById.keySet())) {
+            // the passed batches may have been read before another refresh, the counters are taken from the locked row
+            Batch batch = batchById.get(lockedBatch.getId());
+            copySummary(lockedBatch, batch);
+            previousTotals.put(batch.getId(), value(batch.getTotalTransactions()));
+            if (needsReconcile(batch, now, reconcileIntervalMs)) {
+                reconciledIds.add(batch.getId());
+            } else {
+                foldedIds.add(batch.getId());
+            }
+        }
+
+        if (!foldedIds.isEmpty()) {
+            Map<Long, SummaryDelta> deltas = new HashMap<>();
+            for (Object[] row : transferRepository.summarizeCompletedTransfers(foldedIds, cutoff)) {
+                if (!isBatchPaymentMode((String) row[1])) {
+                    deltas.computeIfAbsent(count(row[0]), id -> new SummaryDelta()).addCompletions(row);
+                }
+            }
+            foldTransfers(transferRepository.summarizeNewTransfers(foldedIds, cutoff), batchById, deltas);
+            for (Long id : foldedIds) {
+                Batch batch = batchById.get(id);
+                if (deltas.containsKey(id)) {
+                    deltas.get(id).applyTo(batch);
+                }
+                if (value(batch.getOngoing()) == 0) {
+                    reconciledIds.add(id);
+                }
+            }
+        }
+
+        if (!reconciledIds.isEmpty()) {
+            Map<Long, SummaryDelta> deltas = new HashMap<>();
+            for (Long id : reconciledIds) {
+                resetCounters(batchById.get(id));
+            }
+            foldTransfers(transferRepository.summarizeTransfers(reconciledIds, cutoff), batchById, deltas);
+            for (Long id : reconciledIds) {
+                Batch batch = batchById.get(id);
+                if (deltas.containsKey(id)) {
+                    deltas.get(id).applyTo(batch);
+                }
+                batch.setLastReconciledAt(now);
+            }
+        }
+
+        for (Batch batch : batches) {
+            batch.setLastCompletedAt(cutoff);
+            markTotalChanged(batch, previousTotals.getOrDefault(batch.getId(), 0L), now);
+            batchRepository.save(batch);
+        }
+    }
+
+    /*
+     * adds the rows of [TransferRepository.summarizeNewTransfers] or [TransferRepository.summarizeTransfers] to the
+     * [deltas] and moves the transfer id watermarks, which also cover the transfers of the batch payment modes
+     */
+    private void foldTransfers(List<Object[]> rows, Map<Long, Batch> batchById, Map<Long, SummaryDelta> deltas) {
+        for (Object[] row : rows) {
+            Batch batch = batchById.get(count(row[0]));
+            long lastTransferId = count(row[10]);
+            if (batch.getLastTransferId() == null || batch.getLastTransferId() < lastTransferId) {
+                batch.setLastTransferId(lastTransferId);
+            }
+            if (!isBatchPaymentMode((String) row[1])) {
+                deltas.computeIfAbsent(batch.getId(), id -> new SummaryDelta()).addTransfers(row);
+            }
+        }
+    }
+
+    /**
+     * Returns the payee FSPs of the transfers of the sub batch, from the [Batch.payeeFsps] column once it is stored,
+     * otherwise from a DISTINCT query on the transfers
+     */
+    @Override
+    public Set<String> getPayeeFsps(Batch subBatch) {
+        if (subBatch.getPayeeFsps() != null) {
+            Set<String> payeeFsps = new HashSet<>();
+            for (String payeeFsp : subBatch.getPayeeFsps().split(",")) {
+                if (!payeeFsp.isEmpty()) {
+                    payeeFsps.add(payeeFsp);
+                }
+            }
+            return payeeFsps;
+        }
+        return distinctPayeeFsps(subBatch.getSubBatchId());
+    }
+
+    /**
+     * Keeps the payee FSPs of a sub batch on its row once the sub batch reached a terminal status, so the summaries
+     * stop querying the transfers. The status must come from counters reconciled by the last
+     * [refreshBatchSummaries], which is the case whenever they show no ongoing transfer: the folded counters lag
+     * behind the transfers and would freeze an incomplete list. Lists too long for the column are not stored.
+     */
+    @Override
+    public void storePayeeFsps(Batch subBatch) {
+        if (StringUtils.isEmpty(subBatch.getSubBatchId()) || subBatch.getPayeeFsps() != null
+                || !TERMINAL_STATUSES.contains(subBatch.getStatus())
+                || subBatch.getLastReconciledAt() == null || value(subBatch.getOngoing()) != 0) {
+            return;
+        }
+        String payeeFsps = String.join(",", distinctPayeeFsps(subBatch.getSubBatchId()));
+        if (payeeFsps.length() <= PAYEE_FSPS_LENGTH) {
+            subBatch.setPayeeFsps(payeeFsps);
+        }
+    }
+
+    private Set<String> distinctPayeeFsps(String subBatchId) {
+        Set<String> payeeFsps = new HashSet<>();
+        for (String payeeFsp : transferRepository.findDistinctPayeeDfspIdsByBatchId(subBatchId)) {
+            if (payeeFsp != null) {
+                payeeFsps.add(payeeFsp);
+            }
+        }
+        return payeeFsps;
+    }
+
+    // this will prevent 2x count of variables by eliminating data from transfers table
+    private boolean isBatchPaymentMode(String paymentMode) {
+        return paymentMode != null && paymentModeConfig.getByMode(strip(paymentMode)).getType().equalsIgnoreCase("BATCH");
+    }
+
+    /*
+     * counters are recomputed from scratch when the batch has no watermark, was never reconciled or was reconciled
+     * more than [reconcileIntervalMs] ago
+     */
+    static boolean needsReconcile(Batch batch, Date now, long reconcileIntervalMs) {
+        return batch.getLastTransferId() == null || batch.getLastReconciledAt() == null
+                || now.getTime() - batch.getLastReconciledAt().getTime() >= reconcileIntervalMs;
+    }
+
+    /*
+     * the first refresh of a batch starts its settle time even when the stored total, written by an older summary or
+     * by the importer, already matches its transfers, otherwise the batch could never settle
+     */
+    static void markTotalChanged(Batch batch, long previousTotal, Date now) {
+        if (batch.getTotalChangedAt() == null || value(batch.getTotalTransactions()) != previousTotal) {
+            batch.setTotalChangedAt(now);
+        }
+    }
+
+    static void resetCounters(Batch batch) {
+        batch.setTotalTransactions(0L);
+        batch.setTotalAmount(0L);
+        batch.setTotalAmountExact(BigDecimal.ZERO);
+        batch.setCompleted(0L);
+        batch.setCompletedAmount(0L);
+        batch.setCompletedAmountExact(BigDecimal.ZERO);
+        batch.setFailed(0L);
+        batch.setFailedAmount(0L);
+        batch.setFailedAmountExact(BigDecimal.ZERO);
+        batch.setOngoing(0L);
+        batch.setOngoingAmount(0L);
+        batch.setOngoingAmountExact(BigDecimal.ZERO);
+        batch.setLastTransferId(null);
+    }
+
+    private static void copySummary(Batch from, Batch to) {
+        if (from == to) {
+            return;
+        }
+        to.setTotalTransactions(from.getTotalTransactions());
+        to.setTotalAmount(from.getTotalAmount());
+        to.setCompleted(from.getCompleted());
+        to.setCompletedAmount(from.getCompletedAmount());
+        to.setFailed(from.getFailed());
+        to.setFailedAmount(from.getFailedAmount());
+        to.setOngoing(from.getOngoing());
+        to.setOngoingAmount(from.getOngoingAmount());
+        to.setTotalAmountExact(from.getTotalAmountExact());
+        to.setCompletedAmountExact(from.getCompletedAmountExact());
+        to.setFailedAmountExact(from.getFailedAmountExact());
+        to.setOngoingAmountExact(from.getOngoingAmountExact());
+        to.setLastTransferId(from.getLastTransferId());
+        to.setLastCompletedAt(from.getLastCompletedAt());
+        to.setLastReconciledAt(from.getLastReconciledAt());
+        to.setTotalChangedAt(from.getTotalChangedAt());
+        to.setPayeeFsps(from.getPayeeFsps());
+    }
+
+    private static long value(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static long count(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+
+    private static BigDecimal amount(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
+    /*
+     * exact amount after the [delta], from the exact sum of the batch or from its [counter] when the batch was
+     * summarized before the exact sums were kept
+     */
+    private static BigDecimal add(BigDecimal exact, Long counter, BigDecimal delta) {
+        return (exact != null ? exact : BigDecimal.valueOf(value(counter))).add(delta);
+    }
+
+    /*
+     * changes of the counters of one batch found by a refresh, the amounts are summed exactly into the exact sums of
+     * the batch and only truncated when they are stored in its amount counters
+     */
+    static final class SummaryDelta {
+
+        private long total;
+        private long completed;
+        private long failed;
+        private long ongoing;
+        private BigDecimal totalAmount = BigDecimal.ZERO;
+        private BigDecimal completedAmount = BigDecimal.ZERO;
+        private BigDecimal failedAmount = BigDecimal.ZERO;
+        private BigDecimal ongoingAmount = BigDecimal.ZERO;
+
+        /**
+         * adds a row of [TransferRepository.summarizeNewTransfers] or [TransferRepository.summarizeTransfers]
+         */
+        void addTransfers(Object[] row) {
+            total += count(row[2]);
+            totalAmount = totalAmount.add(amount(row[3]));
+            completed += count(row[4]);
+            completedAmount = completedAmount.add(amount(row[5]));
+            failed += count(row[6]);
+            failedAmount = failedAmount.add(amount(row[7]));
+            ongoing += count(row[8]);
+            ongoingAmount = ongoingAmount.add(amount(row[9]));
+        }
+
+        /**
+         * adds a row of [TransferRepository.summarizeCompletedTransfers], its transfers leave the ongoing counters
+         */
+        void addCompletions(Object[] row) {
+            completed += count(row[2]);
+            completedAmount = completedAmount.add(amount(row[3]));
+            failed += count(row[4]);
+            failedAmount = failedAmount.add(amount(row[5]));
+            ongoing -= count(row[6]);
+            ongoingAmount = ongoingAmount.subtract(amount(row[7]));
+        }
+
+        void applyTo(Batch batch) {
+            batch.setTotalTransactions(value(batch.getTotalTransactions()) + total);
+            batch.setTotalAmountExact(add(batch.getTotalAmountExact(), batch.getTotalAmount(), totalAmount));
+            batch.setTotalAmount(batch.getTotalAmountExact().longValue());
+            batch.setCompleted(value(batch.getCompleted()) + completed);
+            batch.setCompletedAmountExact(add(batch.getCompletedAmountExact(), batch.getCompletedAmount(), completedAmount));
+            batch.setCompletedAmount(batch.getCompletedAmountExact().longValue());
+            batch.setFailed(value(batch.getFailed()) + failed);
+            batch.setFailedAmountExact(add(batch.getFailedAmountExact(), batch.getFailedAmount(), failedAmount));
+            batch.setFailedAmount(batch.getFailedAmountExact().longValue());
+            batch.setOngoing(value(batch.getOngoing()) + ongoing);
+            batch.setOngoingAmountExact(add(batch.getOngoingAmountExact(), batch.getOngoingAmount(), ongoingAmount));
+            batch.setOngoingAmount(batch.getOngoingAmountExact().longValue());
+        }
+    }
+}
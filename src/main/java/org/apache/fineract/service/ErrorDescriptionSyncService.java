@@ -0,0 +1,9 @@
+package org.apache.fineract.service;
+
+public interface ErrorDescriptionSyncService {
+
+    /**
+     * Brings the materialized error descriptions of the current tenant up to date
+     */
+    void syncErrorDescriptions();
+}
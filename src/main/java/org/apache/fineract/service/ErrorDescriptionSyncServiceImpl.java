@@ -0,0 +1,111 @@
+package org.apache.fineract.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fineract.core.service.TenantDatabaseUpgradeService;
+import org.apache.fineract.core.service.ThreadLocalContextUtil;
+import org.apache.fineract.operations.TransactionRequestRepository;
+import org.apache.fineract.operations.TransferRepository;
+import org.apache.fineract.operations.VariableRepository;
+import org.apache.fineract.operations.Watermark;
+import org.apache.fineract.operations.WatermarkRepository;
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.apache.fineract.organisation.tenant.TenantServerConnectionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Maintains the ERROR_DESCRIPTION columns of transaction_requests and transfers, which hold the errorDescription
+ * variable without its quotes so the error description filter is an index lookup instead of a scan of the
+ * variables. The variables are written by the importer, so the columns are caught up incrementally: the variables
+ * inserted since the last run are copied to their rows, and the rows inserted since the last run pick up the
+ * variable which was there before them. Each pass restarts [overlap] ids before its watermark to catch the rows
+ * committed out of id order, the updates are idempotent. The tenants whose schema is not migrated yet, lacking the
+ * columns, are migrated first or skipped when their migration fails.
+ */
+@Slf4j
+@Service
+public class ErrorDescriptionSyncServiceImpl implements ErrorDescriptionSyncService {
+
+    private static final String VARIABLES_WATERMARK = "errorDescription.variables";
+    private static final String TRANSACTION_REQUESTS_WATERMARK = "errorDescription.transactionRequests";
+    private static final String TRANSFERS_WATERMARK = "errorDescription.transfers";
+
+    @Autowired
+    private TenantServerConnectionRepository tenantRepository;
+
+    @Autowired
+    private TenantDatabaseUpgradeService upgradeService;
+
+    @Autowired
+    private WatermarkRepository watermarkRepository;
+
+    @Autowired
+    private VariableRepository variableRepository;
+
+    @Autowired
+    private TransactionRequestRepository transactionRequestRepository;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Value("${error-description.sync.batch-size}")
+    private long batchSize;
+
+    @Value("${error-description.sync.overlap}")
+    private long overlap;
+
+    @Scheduled(fixedDelayString = "${error-description.sync.interval-ms}")
+    public void syncAllTenants() {
+        for (TenantServerConnection tenant : tenantRepository.findAll()) {
+            try {
+                ThreadLocalContextUtil.setTenant(tenant);
+                if (!upgradeService.ensureMigrated(tenant)) {
+                    continue;
+                }
+                syncErrorDescriptions();
+            } catch (Exception e) {
+                log.warn("failed to sync the error descriptions of tenant {}", tenant.getSchemaName(), e);
+            } finally {
+                ThreadLocalContextUtil.clear();
+            }
+        }
+    }
+
+    @Override
+    public void syncErrorDescriptions() {
+        int updated = catchUp(VARIABLES_WATERMARK, variableRepository.findMaxId(), (from, to) ->
+                transactionRequestRepository.materializeErrorDescriptionsOfVariables(from, to)
+                        + transferRepository.materializeErrorDescriptionsOfVariables(from, to));
+        updated += catchUp(TRANSACTION_REQUESTS_WATERMARK, transactionRequestRepository.findMaxId(),
+                transactionRequestRepository::materializeErrorDescriptions);
+        updated += catchUp(TRANSFERS_WATERMARK, transferRepository.findMaxId(),
+                transferRepository::materializeErrorDescriptions);
+        if (updated > 0) {
+            log.debug("materialized {} error descriptions", updated);
+        }
+    }
+
+    /*
+     * runs [update] on the ids between the watermark, minus the overlap, and [maxId] in slices of [batchSize]
+     * ids, each slice in its own transaction, then moves the watermark to [maxId]
+     */
+    private int catchUp(String name, Long maxId, LongBinaryOperator update) {
+        if (maxId == null) {
+            return 0;
+        }
+        Watermark watermark = watermarkRepository.findByName(name).orElseGet(() -> new Watermark(name, 0L));
+        int updated = 0;
+        for (long from = Math.max(0, watermark.getLastId() - overlap); from < maxId; from += batchSize) {
+            updated += update.applyAsLong(from, Math.min(from + batchSize, maxId));
+        }
+        if (maxId > watermark.getLastId()) {
+            watermark.setLastId(maxId);
+            watermarkRepository.save(watermark);
+        }
+        return updated;
+    }
+}
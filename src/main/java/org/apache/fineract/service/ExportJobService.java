@@ -0,0 +1,28 @@
+package org.apache.fineract.service;
+
+import org.apache.fineract.operations.ExportJob;
+import org.apache.fineract.operations.TransactionRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specifications;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+public interface ExportJobService {
+
+    /**
+     * Queues the csv export of the matching transaction requests for the current tenant
+     * @return the queued job, null when the tenant already has its maximum of queued and running jobs
+     * or when the export queue is full
+     */
+    ExportJob submitTransactionRequestExport(Specifications<TransactionRequest> spec, Sort sort, List<String> variables);
+
+    Optional<ExportJob> findJob(String jobId);
+
+    /**
+     * Opens the file of a [ExportJobStatus.COMPLETED] job, the caller closes the stream
+     * @return the content or null if the file can't be read
+     */
+    InputStream openFile(ExportJob job);
+}
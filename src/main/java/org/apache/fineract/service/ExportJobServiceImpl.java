@@ -0,0 +1,205 @@
+package org.apache.fineract.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.fineract.config.AsyncConfig;
+import org.apache.fineract.core.service.TenantDatabaseUpgradeService;
+import org.apache.fineract.core.service.ThreadLocalContextUtil;
+import org.apache.fineract.data.ErrorCode;
+import org.apache.fineract.exception.WriteToCsvException;
+import org.apache.fineract.file.FileTransferService;
+import org.apache.fineract.operations.ExportJob;
+import org.apache.fineract.operations.ExportJobRepository;
+import org.apache.fineract.operations.ExportJobStatus;
+import org.apache.fineract.operations.TransactionRequest;
+import org.apache.fineract.organisation.tenant.TenantServerConnection;
+import org.apache.fineract.organisation.tenant.TenantServerConnectionRepository;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specifications;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the csv exports on the [AsyncConfig.EXPORT_EXECUTOR] instead of the request threads. The file is written
+ * to a temporary file, then handed to the configured [FileTransferService], the state of the job is kept in the
+ * export_jobs table of the tenant so it can be polled from any instance, and the cap of active jobs per tenant
+ * holds across the instances.
+ */
+@Slf4j
+@Service
+public class ExportJobServiceImpl implements ExportJobService {
+
+    private static final int ERROR_MESSAGE_LENGTH = 1024;
+
+    private static final List<ExportJobStatus> ACTIVE_STATUSES = Arrays.asList(ExportJobStatus.QUEUED,
+            ExportJobStatus.RUNNING);
+
+    private final ExportJobRepository exportJobRepository;
+
+    private final TransactionRequestExportService transactionRequestExportService;
+
+    private final Executor executor;
+
+    private final FileTransferService fileTransferService;
+
+    private final TenantServerConnectionRepository tenantRepository;
+
+    private final TenantDatabaseUpgradeService upgradeService;
+
+    @Value("${application.bucket-name}")
+    private String bucketName;
+
+    @Value("${export.jobs.max-per-tenant}")
+    private int maxJobsPerTenant;
+
+    @Value("${export.jobs.instance-id}")
+    private String instanceId;
+
+    @Value("${export.jobs.orphan-after-ms}")
+    private long orphanAfterMs;
+
+    public ExportJobServiceImpl(ExportJobRepository exportJobRepository,
+                                TransactionRequestExportService transactionRequestExportService,
+                                TenantServerConnectionRepository tenantRepository,
+                                TenantDatabaseUpgradeService upgradeService,
+                                @Qualifier(AsyncConfig.EXPORT_EXECUTOR) Executor executor,
+                                BeanFactory beanFactory,
+                                @Value("${export.jobs.storage}") String storage) {
+        this.exportJobRepository = exportJobRepository;
+        this.transactionRequestExportService = transactionRequestExportService;
+        this.tenantRepository = tenantRepository;
+        this.upgradeService = upgradeService;
+        this.executor = executor;
+        this.fileTransferService = BeanFactoryAnnotationUtils.qualifiedBeanOfType(beanFactory,
+                FileTransferService.class, storage);
+    }
+
+    /**
+     * Fails the queued and running jobs this instance left behind when it stopped, and the ones of any instance
+     * older than [orphanAfterMs], they would be reported as queued or running forever otherwise
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failOrphanedJobs() {
+        Date now = new Date();
+        Date createdBefore = new Date(now.getTime() - orphanAfterMs);
+        for (TenantServerConnection tenant : tenantRepository.findAll()) {
+            try {
+                ThreadLocalContextUtil.setTenant(tenant);
+                if (!upgradeService.ensureMigrated(tenant)) {
+                    continue;
+                }
+                int failed = exportJobRepository.failOrphanedJobs(ACTIVE_STATUSES, instanceId, createdBefore,
+                        ExportJobStatus.FAILED, "Export interrupted by a restart", now);
+                if (failed > 0) {
+                    log.info("failed {} orphaned export jobs of tenant {}", failed, tenant.getSchemaName());
+                }
+            } catch (Exception e) {
+                log.warn("failed to clean up the export jobs of tenant {}", tenant.getSchemaName(), e);
+            } finally {
+                ThreadLocalContextUtil.clear();
+            }
+        }
+    }
+
+    /*
+     * the job is inserted before the cap is checked, so concurrent submissions on any instance see each other:
+     * a job is rejected when the active jobs inserted up to it exceed the cap
+     */
+    @Override
+    public ExportJob submitTransactionRequestExport(Specifications<TransactionRequest> spec, Sort sort, List<String> variables) {
+        ExportJob job = exportJobRepository.save(new ExportJob(UUID.randomUUID().toString(), instanceId));
+        long active = exportJobRepository.countByStatusInAndIdLessThanEqualAndCreatedAtAfter(ACTIVE_STATUSES,
+                job.getId(), new Date(job.getCreatedAt().getTime() - orphanAfterMs));
+        if (active > maxJobsPerTenant) {
+            exportJobRepository.delete(job);
+            log.info("export rejected, tenant {} already has {} export jobs",
+                    ThreadLocalContextUtil.getTenant().getSchemaName(), maxJobsPerTenant);
+            return null;
+        }
+        try {
+            executor.execute(() -> runTransactionRequestExport(job, spec, sort, variables));
+        } catch (RejectedExecutionException e) {
+            log.warn("export queue is full, rejecting export job {}", job.getJobId());
+            job.setStatus(ExportJobStatus.FAILED);
+            job.setErrorMessage("Export queue is full");
+            job.setCompletedAt(new Date());
+            exportJobRepository.save(job);
+            return null;
+        }
+        return job;
+    }
+
+    @Override
+    public Optional<ExportJob> findJob(String jobId) {
+        return exportJobRepository.findByJobId(jobId);
+    }
+
+    @Override
+    public InputStream openFile(ExportJob job) {
+        return fileTransferService.openFile(job.getFileName(), bucketName);
+    }
+
+    private void runTransactionRequestExport(ExportJob job, Specifications<TransactionRequest> spec, Sort sort,
+                                             List<String> variables) {
+        File file = null;
+        try {
+            job.setStatus(ExportJobStatus.RUNNING);
+            job.setStartedAt(new Date());
+            job = exportJobRepository.save(job);
+            File destination = File.createTempFile("transactionRequests_", ".csv");
+            file = destination;
+            long rows = transactionRequestExportService.writeCsv(spec, sort, 0, 0, variables, () -> {
+                try {
+                    return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(destination), StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    throw new WriteToCsvException(ErrorCode.CSV_GET_WRITER, "Unable to open the export file", e.getMessage());
+                }
+            });
+            job.setRowCount(rows);
+            if (rows == 0) {
+                job.setStatus(ExportJobStatus.EMPTY);
+            } else {
+                String location = fileTransferService.uploadFile(destination, bucketName);
+                if (location == null) {
+                    throw new IOException("Unable to store the export file");
+                }
+                // the aws storage returns the url of the file, the others its name
+                job.setFileName(location.substring(location.lastIndexOf('/') + 1));
+                job.setStatus(ExportJobStatus.COMPLETED);
+            }
+            log.info("export job {} exported {} transaction requests", job.getJobId(), rows);
+        } catch (Exception e) {
+            log.error("export job {} failed", job.getJobId(), e);
+            job.setStatus(ExportJobStatus.FAILED);
+            job.setErrorMessage(StringUtils.abbreviate(e.getMessage(), ERROR_MESSAGE_LENGTH));
+        } finally {
+            if (file != null && file.exists() && !file.delete()) {
+                log.warn("unable to delete the temporary export file {}", file);
+            }
+            job.setCompletedAt(new Date());
+            exportJobRepository.save(job);
+        }
+    }
+}
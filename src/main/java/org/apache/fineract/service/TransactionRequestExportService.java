@@ -0,0 +1,23 @@
+package org.apache.fineract.service;
+
+import org.apache.fineract.exception.WriteToCsvException;
+import org.apache.fineract.operations.TransactionRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specifications;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+public interface TransactionRequestExportService {
+
+    /**
+     * Opens the destination of the csv, only called once a row is known to match
+     */
+    interface CsvTarget {
+        PrintWriter open() throws WriteToCsvException;
+    }
+
+    long writeCsv(Specifications<TransactionRequest> spec, Sort sort, int firstResult, int maxResults,
+                  List<String> variables, CsvTarget target) throws IOException, WriteToCsvException;
+}
@@ -0,0 +1,184 @@
+package org.apache.fineract.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fineract.exception.WriteToCsvException;
+import org.apache.fineract.operations.SpecificationQueryRepository;
+import org.apache.fineract.operations.TransactionRequest;
+import org.apache.fineract.operations.VariableRepository;
+import org.apache.fineract.utils.CsvColumn;
+import org.apache.fineract.utils.CsvWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specifications;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+@Slf4j
+@Service
+public class TransactionRequestExportServiceImpl implements TransactionRequestExportService {
+
+    /*
+     * scalar columns of the csv export of [TransactionRequest], read through the getters so the lazy variables
+     * are never loaded, the selected variables are added as extra columns
+     */
+    private static final List<CsvColumn<TransactionRequest>> TRANSACTION_REQUEST_EXPORT_COLUMNS = Arrays.asList(
+            CsvColumn.of("WORKFLOWINSTANCEKEY", TransactionRequest::getWorkflowInstanceKey),
+            CsvColumn.of("TRANSACTIONID", TransactionRequest::getTransactionId),
+            CsvColumn.of("STARTEDAT", TransactionRequest::getStartedAt),
+            CsvColumn.of("COMPLETEDAT", TransactionRequest::getCompletedAt),
+            CsvColumn.of("STATE", TransactionRequest::getState),
+            CsvColumn.of("PAYEEDFSPID", TransactionRequest::getPayeeDfspId),
+            CsvColumn.of("PAYEEPARTYID", TransactionRequest::getPayeePartyId),
+            CsvColumn.of("PAYEEPARTYIDTYPE", TransactionRequest::getPayeePartyIdType),
+            CsvColumn.of("PAYEEFEE", TransactionRequest::getPayeeFee),
+            CsvColumn.of("PAYEEQUOTECODE", TransactionRequest::getPayeeQuoteCode),
+            CsvColumn.of("PAYERDFSPID", TransactionRequest::getPayerDfspId),
+            CsvColumn.of("PAYERPARTYID", TransactionRequest::getPayerPartyId),
+            CsvColumn.of("PAYERPARTYIDTYPE", TransactionRequest::getPayerPartyIdType),
+            CsvColumn.of("PAYERFEE", TransactionRequest::getPayerFee),
+            CsvColumn.of("PAYERQUOTECODE", TransactionRequest::getPayerQuoteCode),
+            CsvColumn.of("AMOUNT", TransactionRequest::getAmount),
+            CsvColumn.of("CURRENCY", TransactionRequest::getCurrency),
+            CsvColumn.of("DIRECTION", TransactionRequest::getDirection),
+            CsvColumn.of("AUTHTYPE", TransactionRequest::getAuthType),
+            CsvColumn.of("INITIATORTYPE", TransactionRequest::getInitiatorType),
+            CsvColumn.of("SCENARIO", TransactionRequest::getScenario),
+            CsvColumn.of("EXTERNALID", TransactionRequest::getExternalId),
+            CsvColumn.of("CLIENTCORRELATIONID", TransactionRequest::getClientCorrelationId),
+            CsvColumn.of("ERRORINFORMATION", TransactionRequest::getErrorInformation));
+
+    @Autowired
+    private SpecificationQueryRepository specificationQueryRepository;
+
+    @Autowired
+    private VariableRepository variableRepository;
+
+    @Value("${export.variable-batch-size}")
+    private int exportVariableBatchSize;
+
+    @Value("${export.variable-max-concurrent}")
+    private int variableExportsMaxConcurrent;
+
+    /*
+     * an export with variables holds the connection of its cursor while it takes a second one to load the variables,
+     * capping these exports below half of the tenant pool keeps them from taking all the connections and waiting
+     * for each other
+     */
+    private Semaphore variableExports;
+
+    @PostConstruct
+    public void init() {
+        variableExports = new Semaphore(variableExportsMaxConcurrent, true);
+    }
+
+    /**
+     * Streams the matching transaction requests as csv into the [target] and returns the number of rows, the target
+     * is only opened once a row is known to match. The requested variables are loaded by one query per
+     * [exportVariableBatchSize] rows, so the export runs a constant number of statements per batch whatever the
+     * number of variables of each request. At most [variableExportsMaxConcurrent] exports with variables run at a
+     * time, the others wait before opening their cursor.
+     * @param maxResults the maximum number of rows to export, 0 exports every matching row
+     */
+    @Override
+    public long writeCsv(Specifications<TransactionRequest> spec, Sort sort, int firstResult, int maxResults,
+                         List<String> variables, CsvTarget target) throws IOException, WriteToCsvException {
+        if (variables == null || variables.isEmpty()) {
+            return writeCsv(spec, sort, firstResult, maxResults, variables, target, false);
+        }
+        try {
+            variableExports.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a variable export slot", e);
+        }
+        try {
+            return writeCsv(spec, sort, firstResult, maxResults, variables, target, true);
+        } finally {
+            variableExports.release();
+        }
+    }
+
+    private long writeCsv(Specifications<TransactionRequest> spec, Sort sort, int firstResult, int maxResults,
+                          List<String> variables, CsvTarget target, boolean withVariables)
+            throws IOException, WriteToCsvException {
+        List<CsvColumn<TransactionRequest>> columns = new ArrayList<>(TRANSACTION_REQUEST_EXPORT_COLUMNS);
+        Map<String, Map<String, String>> variableValues = new HashMap<>();
+        if (withVariables) {
+            for (String name : variables) {
+                columns.add(CsvColumn.of(name, transactionRequest -> {
+                    Map<String, String> values = variableValues.get(transactionRequest.getWorkflowInstanceKey());
+                    return values == null ? null : values.get(name);
+                }));
+            }
+        }
+        List<CsvWriter<TransactionRequest>> csvWriter = new ArrayList<>(1);
+        List<TransactionRequest> pending = new ArrayList<>();
+        long rows = specificationQueryRepository.stream(TransactionRequest.class, spec, sort, firstResult, maxResults,
+                transactionRequest -> {
+                    try {
+                        if (csvWriter.isEmpty()) {
+                            CsvWriter<TransactionRequest> writer = new CsvWriter.Builder<TransactionRequest>()
+                                    .setPrintWriter(target.open())
+                                    .setColumns(columns)
+                                    .buildStreaming();
+                            writer.writeHeader();
+                            csvWriter.add(writer);
+                        }
+                        if (!withVariables) {
+                            csvWriter.get(0).writeRow(transactionRequest);
+                            return;
+                        }
+                        pending.add(transactionRequest);
+                        if (pending.size() >= exportVariableBatchSize) {
+                            writeWithVariables(csvWriter.get(0), pending, variables, variableValues);
+                        }
+                    } catch (WriteToCsvException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                });
+        if (rows > 0) {
+            writeWithVariables(csvWriter.get(0), pending, variables, variableValues);
+            csvWriter.get(0).close();
+        }
+        return rows;
+    }
+
+    /*
+     * Loads the variables of the pending rows in one query, writes the rows and clears both
+     */
+    private void writeWithVariables(CsvWriter<TransactionRequest> csvWriter, List<TransactionRequest> pending,
+                                    List<String> variables, Map<String, Map<String, String>> variableValues)
+            throws WriteToCsvException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Long> workflowInstanceKeys = new ArrayList<>(pending.size());
+        for (TransactionRequest transactionRequest : pending) {
+            try {
+                workflowInstanceKeys.add(Long.valueOf(transactionRequest.getWorkflowInstanceKey()));
+            } catch (NumberFormatException e) {
+                log.debug("no variables for workflow instance key {}", transactionRequest.getWorkflowInstanceKey());
+            }
+        }
+        if (!workflowInstanceKeys.isEmpty()) {
+            for (Object[] row : variableRepository.findValues(workflowInstanceKeys, variables)) {
+                variableValues.computeIfAbsent(String.valueOf(row[0]), key -> new HashMap<>())
+                        .put((String) row[1], (String) row[2]);
+            }
+        }
+        for (TransactionRequest transactionRequest : pending) {
+            csvWriter.writeRow(transactionRequest);
+        }
+        pending.clear();
+        variableValues.clear();
+    }
+}
@@ -0,0 +1,23 @@
+package org.apache.fineract.service;
+
+import org.apache.fineract.operations.Task;
+import org.apache.fineract.operations.TransactionRequestDetail;
+import org.apache.fineract.operations.TransferDetail;
+import org.apache.fineract.operations.Variable;
+
+import java.util.List;
+
+public interface WorkflowDetailService {
+
+    TransferDetail getTransferDetail(Long workflowInstanceKey);
+
+    TransactionRequestDetail getTransactionRequestDetail(Long workflowInstanceKey);
+
+    List<TransferDetail> getTransferDetails(List<Long> workflowInstanceKeys);
+
+    List<TransactionRequestDetail> getTransactionRequestDetails(List<Long> workflowInstanceKeys);
+
+    List<List<Task>> getTasks(List<Long> workflowInstanceKeys);
+
+    List<List<Variable>> getVariables(List<Long> workflowInstanceKeys);
+}
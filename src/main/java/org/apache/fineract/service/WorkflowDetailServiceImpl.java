@@ -0,0 +1,337 @@
+package org.apache.fineract.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apache.fineract.config.AsyncConfig;
+import org.apache.fineract.config.DetailCacheConfig;
+import org.apache.fineract.operations.Task;
+import org.apache.fineract.operations.TaskRepository;
+import org.apache.fineract.operations.TransactionRequest;
+import org.apache.fineract.operations.TransactionRequestDetail;
+import org.apache.fineract.operations.TransactionRequestRepository;
+import org.apache.fineract.operations.TransactionRequestState;
+import org.apache.fineract.operations.Transfer;
+import org.apache.fineract.operations.TransferDetail;
+import org.apache.fineract.operations.TransferRepository;
+import org.apache.fineract.operations.TransferStatus;
+import org.apache.fineract.operations.Variable;
+import org.apache.fineract.operations.VariableRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Loads the detail timeline of workflow instances, the entity, its tasks and its variables are independent reads
+ * so the tasks and the variables are fetched on the [AsyncConfig.REPOSITORY_EXECUTOR] while the entity is read on
+ * the calling thread. The details of the workflows which reached a terminal state more than [settleSeconds] ago no
+ * longer change, they are kept in the [DetailCacheConfig] caches. The other ones are always read again, the tasks and
+ * variables imported after the end of the workflow and the error description filled in by the
+ * [ErrorDescriptionSyncService] may still be missing. The cache holds copies and hands out copies, so the callers
+ * never share the cached entities.
+ */
+@Slf4j
+@Service
+public class WorkflowDetailServiceImpl implements WorkflowDetailService {
+
+    private static final Set<TransferStatus> TERMINAL_TRANSFER_STATUSES =
+            EnumSet.of(TransferStatus.COMPLETED, TransferStatus.FAILED);
+
+    private static final Set<TransactionRequestState> TERMINAL_TRANSACTION_REQUEST_STATES =
+            EnumSet.of(TransactionRequestState.SUCCESS, TransactionRequestState.FAILED, TransactionRequestState.REJECTED);
+
+    private final TransferRepository transferRepository;
+
+    private final TransactionRequestRepository transactionRequestRepository;
+
+    private final TaskRepository taskRepository;
+
+    private final VariableRepository variableRepository;
+
+    private final Executor executor;
+
+    private final Ehcache transferDetailCache;
+
+    private final Ehcache transactionRequestDetailCache;
+
+    @Value("${operations.details.in-clause-size}")
+    private int inClauseSize;
+
+    @Value("${detail-cache.settle-seconds}")
+    private long settleSeconds;
+
+    public WorkflowDetailServiceImpl(TransferRepository transferRepository,
+                                     TransactionRequestRepository transactionRequestRepository,
+                                     TaskRepository taskRepository,
+                                     VariableRepository variableRepository,
+                                     @Qualifier(AsyncConfig.REPOSITORY_EXECUTOR) Executor executor,
+                                     @Qualifier(DetailCacheConfig.DETAIL_CACHE_MANAGER) CacheManager detailCacheManager) {
+        this.transferRepository = transferRepository;
+        this.transactionRequestRepository = transactionRequestRepository;
+        this.taskRepository = taskRepository;
+        this.variableRepository = variableRepository;
+        this.executor = executor;
+        this.transferDetailCache = detailCacheManager.getEhcache(DetailCacheConfig.CACHE_TRANSFER_DETAIL);
+        this.transactionRequestDetailCache = detailCacheManager.getEhcache(DetailCacheConfig.CACHE_TRANSACTION_REQUEST_DETAIL);
+    }
+
+    @Override
+    public TransferDetail getTransferDetail(Long workflowInstanceKey) {
+        TransferDetail cached = cachedTransferDetail(transferDetailCache, workflowInstanceKey);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<List<Task>> tasksAsync = CompletableFuture.supplyAsync(() ->
+                taskRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey), executor);
+        CompletableFuture<List<Variable>> variablesAsync = CompletableFuture.supplyAsync(() ->
+                variableRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey), executor);
+        Transfer transfer = transferRepository.findFirstByWorkflowInstanceKey(workflowInstanceKey);
+        TransferDetail detail = new TransferDetail(transfer, tasksAsync.join(), variablesAsync.join());
+        cacheTransferDetail(workflowInstanceKey, detail);
+        return detail;
+    }
+
+    @Override
+    public TransactionRequestDetail getTransactionRequestDetail(Long workflowInstanceKey) {
+        TransactionRequestDetail cached = cachedTransactionRequestDetail(transactionRequestDetailCache, workflowInstanceKey);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<List<Task>> tasksAsync = CompletableFuture.supplyAsync(() ->
+                taskRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey), executor);
+        CompletableFuture<List<Variable>> variablesAsync = CompletableFuture.supplyAsync(() ->
+                variableRepository.findByWorkflowInstanceKeyOrderByTimestamp(workflowInstanceKey), executor);
+        TransactionRequest transactionRequest = transactionRequestRepository.findFirstByWorkflowInstanceKey(workflowInstanceKey);
+        TransactionRequestDetail detail = new TransactionRequestDetail(transactionRequest, tasksAsync.join(), variablesAsync.join());
+        cacheTransactionRequestDetail(workflowInstanceKey, detail);
+        return detail;
+    }
+
+    /**
+     * Loads the details of several transfers, the cached ones are taken from the cache and the others are read
+     * with one query per table whatever the number of keys. The details are returned in the order of the keys,
+     * the keys without transfer are left out.
+     */
+    @Override
+    public List<TransferDetail> getTransferDetails(List<Long> workflowInstanceKeys) {
+        Set<Long> keys = new LinkedHashSet<>(workflowInstanceKeys);
+        Map<Long, TransferDetail> details = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long key : keys) {
+            TransferDetail cached = cachedTransferDetail(transferDetailCache, key);
+            if (cached != null) {
+                details.put(key, cached);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            CompletableFuture<Map<Long, List<Task>>> tasksAsync = tasksAsync(missing);
+            CompletableFuture<Map<Long, List<Variable>>> variablesAsync = variablesAsync(missing);
+            Map<Long, Transfer> transfers = new HashMap<>();
+            for (Transfer transfer : transferRepository.findByWorkflowInstanceKeyIn(missing)) {
+                transfers.putIfAbsent(transfer.getWorkflowInstanceKey(), transfer);
+            }
+            Map<Long, List<Task>> tasks = tasksAsync.join();
+            Map<Long, List<Variable>> variables = variablesAsync.join();
+            for (Map.Entry<Long, Transfer> transfer : transfers.entrySet()) {
+                Long key = transfer.getKey();
+                TransferDetail detail = new TransferDetail(transfer.getValue(),
+                        tasks.getOrDefault(key, Collections.emptyList()), variables.getOrDefault(key, Collections.emptyList()));
+                cacheTransferDetail(key, detail);
+                details.put(key, detail);
+            }
+        }
+        log.debug("loaded {} transfer details of {} workflow instance keys, {} from the cache", details.size(),
+                keys.size(), keys.size() - missing.size());
+        return valuesInKeyOrder(keys, details);
+    }
+
+    /**
+     * Loads the details of several transaction requests, the cached ones are taken from the cache and the others
+     * are read with one query per table whatever the number of keys. The details are returned in the order of the
+     * keys, the keys without transaction request are left out.
+     */
+    @Override
+    public List<TransactionRequestDetail> getTransactionRequestDetails(List<Long> workflowInstanceKeys) {
+        Set<Long> keys = new LinkedHashSet<>(workflowInstanceKeys);
+        Map<Long, TransactionRequestDetail> details = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long key : keys) {
+            TransactionRequestDetail cached = cachedTransactionRequestDetail(transactionRequestDetailCache, key);
+            if (cached != null) {
+                details.put(key, cached);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            CompletableFuture<Map<Long, List<Task>>> tasksAsync = tasksAsync(missing);
+            CompletableFuture<Map<Long, List<Variable>>> variablesAsync = variablesAsync(missing);
+            List<String> transactionRequestKeys = new ArrayList<>(missing.size());
+            for (Long key : missing) {
+                transactionRequestKeys.add(String.valueOf(key));
+            }
+            Map<Long, TransactionRequest> transactionRequests = new HashMap<>();
+            for (TransactionRequest transactionRequest : transactionRequestRepository.findByWorkflowInstanceKeyIn(transactionRequestKeys)) {
+                transactionRequests.putIfAbsent(Long.valueOf(transactionRequest.getWorkflowInstanceKey()), transactionRequest);
+            }
+            Map<Long, List<Task>> tasks = tasksAsync.join();
+            Map<Long, List<Variable>> variables = variablesAsync.join();
+            for (Map.Entry<Long, TransactionRequest> transactionRequest : transactionRequests.entrySet()) {
+                Long key = transactionRequest.getKey();
+                TransactionRequestDetail detail = new TransactionRequestDetail(transactionRequest.getValue(),
+                        tasks.getOrDefault(key, Collections.emptyList()), variables.getOrDefault(key, Collections.emptyList()));
+                cacheTransactionRequestDetail(key, detail);
+                details.put(key, detail);
+            }
+        }
+        log.debug("loaded {} transaction request details of {} workflow instance keys, {} from the cache",
+                details.size(), keys.size(), keys.size() - missing.size());
+        return valuesInKeyOrder(keys, details);
+    }
+
+    /**
+     * Loads the tasks of each workflow instance, the result holds one list per key in the order of the keys, empty
+     * when the instance has no task. The tasks of all the keys are read by one query per [inClauseSize] keys.
+     */
+    @Override
+    public List<List<Task>> getTasks(List<Long> workflowInstanceKeys) {
+        return inKeyOrder(workflowInstanceKeys, tasks(new LinkedHashSet<>(workflowInstanceKeys)));
+    }
+
+    /**
+     * Loads the variables of each workflow instance, the result holds one list per key in the order of the keys,
+     * empty when the instance has no variable. The variables of all the keys are read by one query per
+     * [inClauseSize] keys.
+     */
+    @Override
+    public List<List<Variable>> getVariables(List<Long> workflowInstanceKeys) {
+        return inKeyOrder(workflowInstanceKeys, variables(new LinkedHashSet<>(workflowInstanceKeys)));
+    }
+
+    private CompletableFuture<Map<Long, List<Task>>> tasksAsync(Set<Long> keys) {
+        return CompletableFuture.supplyAsync(() -> tasks(keys), executor);
+    }
+
+    private CompletableFuture<Map<Long, List<Variable>>> variablesAsync(Set<Long> keys) {
+        return CompletableFuture.supplyAsync(() -> variables(keys), executor);
+    }
+
+    private Map<Long, List<Task>> tasks(Set<Long> keys) {
+        return groupByWorkflowInstanceKey(findInChunks(keys, taskRepository::findByWorkflowInstanceKeyInOrderByTimestamp),
+                Task::getWorkflowInstanceKey);
+    }
+
+    private Map<Long, List<Variable>> variables(Set<Long> keys) {
+        return groupByWorkflowInstanceKey(findInChunks(keys, variableRepository::findByWorkflowInstanceKeyInOrderByTimestamp),
+                Variable::getWorkflowInstanceKey);
+    }
+
+    /*
+     * runs the IN query once per [inClauseSize] keys, each key is in a single chunk so the rows of a key keep the
+     * order of the query
+     */
+    private <T> List<T> findInChunks(Set<Long> keys, Function<Collection<Long>, List<T>> query) {
+        if (keys.size() <= inClauseSize) {
+            return keys.isEmpty() ? Collections.emptyList() : query.apply(keys);
+        }
+        List<T> rows = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(inClauseSize);
+        for (Long key : keys) {
+            chunk.add(key);
+            if (chunk.size() == inClauseSize) {
+                rows.addAll(query.apply(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            rows.addAll(query.apply(chunk));
+        }
+        return rows;
+    }
+
+    private static TransferDetail cachedTransferDetail(Ehcache cache, Long workflowInstanceKey) {
+        Element element = cache.get(DetailCacheConfig.tenantKey(workflowInstanceKey));
+        return element == null ? null : ((TransferDetail) element.getObjectValue()).copy();
+    }
+
+    private static TransactionRequestDetail cachedTransactionRequestDetail(Ehcache cache, Long workflowInstanceKey) {
+        Element element = cache.get(DetailCacheConfig.tenantKey(workflowInstanceKey));
+        return element == null ? null : ((TransactionRequestDetail) element.getObjectValue()).copy();
+    }
+
+    private void cacheTransferDetail(Long workflowInstanceKey, TransferDetail detail) {
+        Transfer transfer = detail.getTransfer();
+        if (transfer != null && TERMINAL_TRANSFER_STATUSES.contains(transfer.getStatus())
+                && isSettled(transfer.getCompletedAt())) {
+            transferDetailCache.put(new Element(DetailCacheConfig.tenantKey(workflowInstanceKey), detail.copy()));
+        }
+    }
+
+    private void cacheTransactionRequestDetail(Long workflowInstanceKey, TransactionRequestDetail detail) {
+        TransactionRequest transactionRequest = detail.getTransactionRequest();
+        if (transactionRequest != null && TERMINAL_TRANSACTION_REQUEST_STATES.contains(transactionRequest.getState())
+                && isSettled(transactionRequest.getCompletedAt())) {
+            transactionRequestDetailCache.put(new Element(DetailCacheConfig.tenantKey(workflowInstanceKey), detail.copy()));
+        }
+    }
+
+    /*
+     * true once the workflow completed more than [settleSeconds] ago, a terminal workflow without completion time
+     * is never cached
+     */
+    private boolean isSettled(Date completedAt) {
+        return completedAt != null
+                && System.currentTimeMillis() - completedAt.getTime() > TimeUnit.SECONDS.toMillis(settleSeconds);
+    }
+
+    /*
+     * the values of the keys which have one, in the order of the keys
+     */
+    private static <T> List<T> valuesInKeyOrder(Set<Long> keys, Map<Long, T> values) {
+        List<T> result = new ArrayList<>(values.size());
+        for (Long key : keys) {
+            T value = values.get(key);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private static <T> List<List<T>> inKeyOrder(List<Long> workflowInstanceKeys, Map<Long, List<T>> grouped) {
+        List<List<T>> result = new ArrayList<>(workflowInstanceKeys.size());
+        for (Long key : workflowInstanceKeys) {
+            result.add(grouped.getOrDefault(key, Collections.emptyList()));
+        }
+        return result;
+    }
+
+    /*
+     * groups the rows by workflow instance key, keeping their timestamp order within each group
+     */
+    private static <T> Map<Long, List<T>> groupByWorkflowInstanceKey(List<T> rows, Function<T, Long> workflowInstanceKey) {
+        Map<Long, List<T>> grouped = new HashMap<>();
+        for (T row : rows) {
+            grouped.computeIfAbsent(workflowInstanceKey.apply(row), key -> new ArrayList<>()).add(row);
+        }
+        return grouped;
+    }
+}
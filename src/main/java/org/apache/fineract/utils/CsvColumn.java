@@ -0,0 +1,31 @@
+package org.apache.fineract.utils;
+
+import java.util.function.Function;
+
+/**
+ * A column of a csv export, the value is read by an explicit accessor instead of resolving a bean property
+ * so the export only touches the state it lists
+ * @param <T> generic type representing the data type of the exported rows
+ */
+public class CsvColumn<T> {
+
+    private final String header;
+    private final Function<T, ?> value;
+
+    private CsvColumn(String header, Function<T, ?> value) {
+        this.header = header;
+        this.value = value;
+    }
+
+    public static <T> CsvColumn<T> of(String header, Function<T, ?> value) {
+        return new CsvColumn<>(header, value);
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public Object valueOf(T row) {
+        return value.apply(row);
+    }
+}
@@ -15,6 +15,21 @@ import static org.apache.fineract.utils.CsvWriter.performErrorProneTask;
 public class CsvUtility {
 
     public static <T> void writeToCsv(HttpServletResponse response, List<T> listOfData) throws WriteToCsvException {
+        PrintWriter printWriter = getCsvPrintWriter(response);
+
+        CsvWriter<T> writer = new CsvWriter.Builder<T>()
+                .setPrintWriter(printWriter)
+                .setData(listOfData)
+                .build();
+
+        //System.out.println("Writer object created success");
+        writer.write();
+    }
+
+    /**
+     * Prepares the response for a csv attachment and returns its writer
+     */
+    public static PrintWriter getCsvPrintWriter(HttpServletResponse response) throws WriteToCsvException {
         response.setContentType("text/csv");
         DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
         String currentDateTime = dateFormatter.format(new Date());
@@ -23,21 +38,11 @@ public class CsvUtility {
         String headerValue = "attachment; filename=" + filename;
         response.setHeader(headerKey, headerValue);
 
-        PrintWriter printWriter = performErrorProneTask(
+        return performErrorProneTask(
                 new WriteToCsvException(
                         ErrorCode.CSV_GET_WRITER,
                         "Unable get writer from HttpServletResponse"),
                 response::getWriter) ;
-
-        //System.out.println("Print writer fetch success");
-
-        CsvWriter<T> writer = new CsvWriter.Builder<T>()
-                .setPrintWriter(printWriter)
-                .setData(listOfData)
-                .build();
-
-        //System.out.println("Writer object created success");
-        writer.write();
     }
 
 }
@@ -4,12 +4,20 @@ import org.apache.fineract.data.ErrorCode;
 import org.apache.fineract.exception.CsvWriterException;
 import org.apache.fineract.exception.WriteToCsvException;
 import org.supercsv.io.CsvBeanWriter;
+import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.ICsvBeanWriter;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.io.ICsvWriter;
 import org.supercsv.prefs.CsvPreference;
 
 import java.io.PrintWriter;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * custom csv writer for writing list of POJOs into printer of HttpServletResponse
@@ -21,16 +29,43 @@ public class CsvWriter<T> {
         T call() throws Exception;
     }
 
+    private static final Map<Class<?>, String[]> NAME_MAPPINGS = new ConcurrentHashMap<>();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ICsvWriter iCsvWriter;
     private final ICsvBeanWriter iCsvBeanWriter;
+    private final ICsvListWriter iCsvListWriter;
     private final String[] csvHeader;
     private final List<T> data;
     private final String[] nameMapping;
+    private final List<CsvColumn<T>> columns;
+    private final PrintWriter printWriter;
+    private final CsvRowWriter<T> rowWriter;
+    private final StringBuilder buffer;
 
-    private CsvWriter(PrintWriter printWriter, String[] csvHeader, List<T> data, String[] nameMapping) {
-        this.iCsvBeanWriter = new CsvBeanWriter(printWriter, CsvPreference.STANDARD_PREFERENCE);
+    private CsvWriter(PrintWriter printWriter, String[] csvHeader, List<T> data, String[] nameMapping,
+                      List<CsvColumn<T>> columns, CsvRowWriter<T> rowWriter) {
+        this.printWriter = printWriter;
+        this.rowWriter = rowWriter;
+        this.buffer = rowWriter == null ? null : new StringBuilder(BUFFER_SIZE * 2);
+        if (rowWriter != null) {
+            this.iCsvBeanWriter = null;
+            this.iCsvListWriter = null;
+            this.iCsvWriter = null;
+        } else if (columns == null) {
+            this.iCsvBeanWriter = new CsvBeanWriter(printWriter, CsvPreference.STANDARD_PREFERENCE);
+            this.iCsvListWriter = null;
+            this.iCsvWriter = iCsvBeanWriter;
+        } else {
+            this.iCsvBeanWriter = null;
+            this.iCsvListWriter = new CsvListWriter(printWriter, CsvPreference.STANDARD_PREFERENCE);
+            this.iCsvWriter = iCsvListWriter;
+        }
         this.csvHeader = csvHeader;
         this.data = data;
         this.nameMapping = nameMapping;
+        this.columns = columns;
     }
 
     /**
@@ -43,16 +78,94 @@ public class CsvWriter<T> {
         closeStream();
     }
 
+    /**
+     * writes the csv header, used along with [writeRow] and [close] when the rows are streamed
+     * instead of being passed to the builder as list
+     * @throws WriteToCsvException @see [writeCsvHeaders]
+     */
+    public void writeHeader() throws WriteToCsvException {
+        writeCsvHeaders(csvHeader);
+    }
+
+    /**
+     * writes a single row into csv
+     * @param row the object to be translated into row
+     * @throws WriteToCsvException @see [performErrorProneTask]
+     */
+    public void writeRow(T row) throws WriteToCsvException {
+        if (rowWriter != null) {
+            writeCompiledRow(row);
+            return;
+        }
+        performErrorProneTask(
+                new WriteToCsvException(ErrorCode.CSV_WRITE_DATA, "Unable to write csv row"),
+                () -> {
+                    if (columns == null) {
+                        iCsvBeanWriter.write(row, nameMapping);
+                    } else {
+                        List<Object> values = new ArrayList<>(columns.size());
+                        for (CsvColumn<T> column : columns) {
+                            values.add(column.valueOf(row));
+                        }
+                        iCsvListWriter.write(values);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * flushes and closes the underlying writer
+     * @throws WriteToCsvException @see [closeStream]
+     */
+    public void close() throws WriteToCsvException {
+        closeStream();
+    }
+
+    /**
+     * appends the row to the buffer through the compiled [CsvRowWriter], the buffer is handed to the printer
+     * once full. No exception is created unless the row fails.
+     * @throws WriteToCsvException if a getter of the row fails
+     */
+    private void writeCompiledRow(T row) throws WriteToCsvException {
+        try {
+            rowWriter.appendRow(row, buffer);
+        } catch (IllegalStateException e) {
+            WriteToCsvException exception = new WriteToCsvException(ErrorCode.CSV_WRITE_DATA,
+                    "Unable to write csv row", e.getLocalizedMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+        if (buffer.length() >= BUFFER_SIZE) {
+            flushBuffer();
+        }
+    }
+
+    /*
+     * hands the buffer to the printer, which swallows the io errors, so its error flag is checked
+     * to stop writing once the client is gone
+     */
+    private void flushBuffer() throws WriteToCsvException {
+        printWriter.append(buffer);
+        buffer.setLength(0);
+        if (printWriter.checkError()) {
+            throw new WriteToCsvException(ErrorCode.CSV_STREAM, "Unable to close/flush stream");
+        }
+    }
+
     /**
      * writes the headers into csv
      * @param csvHeader the headers to be written in csv of type string array
      * @throws WriteToCsvException @see [performErrorProneTask]
      */
     private void writeCsvHeaders(String[] csvHeader) throws WriteToCsvException {
+        if (rowWriter != null) {
+            CsvRowWriter.appendHeader(csvHeader, buffer);
+            return;
+        }
         performErrorProneTask(
                 new WriteToCsvException(ErrorCode.CSV_WRITE_HEADER, "Unable to write csv headers"),
                 () -> {
-                    iCsvBeanWriter.writeHeader(csvHeader);
+                    iCsvWriter.writeHeader(csvHeader);
                     return null;
                 });
     }
@@ -64,6 +177,12 @@ public class CsvWriter<T> {
      * @throws WriteToCsvException @see [performErrorProneTask]
      */
     private void writeData(String[] nameMapping, List<T> objects) throws WriteToCsvException {
+        if (rowWriter != null) {
+            for (T data : objects) {
+                writeCompiledRow(data);
+            }
+            return;
+        }
         for(T data: objects) {
             performErrorProneTask(
                     new WriteToCsvException(ErrorCode.CSV_WRITE_DATA, "Unable to write csv headers"),
@@ -79,10 +198,18 @@ public class CsvWriter<T> {
      * @throws WriteToCsvException @see [performErrorProneTask]
      */
     private void closeStream() throws WriteToCsvException {
+        if (rowWriter != null) {
+            try {
+                flushBuffer();
+            } finally {
+                printWriter.close();
+            }
+            return;
+        }
         performErrorProneTask(
                 new WriteToCsvException(ErrorCode.CSV_STREAM, "Unable to close/flush stream"),
                 () -> {
-                    iCsvBeanWriter.close();
+                    iCsvWriter.close();
                     return null;
                 });
     }
@@ -107,19 +234,28 @@ public class CsvWriter<T> {
     }
 
     /**
-     * Automatically generates the name mapping string using the java reflect api
+     * Automatically generates the name mapping string using the java reflect api, the mapping is computed once
+     * per class. Static and synthetic fields (like the ones added by weaving) and collections (like lazy
+     * relationships, which would be loaded for every row) are left out.
      * @param pojoClass the Class instance of the generic type [T]
      * @param <T> the generic type for [pojoClass]
      * @return string array of name mapping
      */
     public static <T> String[] generateNameMapping(Class<T> pojoClass) {
-        Field[] fields = pojoClass.getDeclaredFields();
-        String[] nm = new String[fields.length];
-        int i = 0;
-        for (Field field :fields) {
-            nm[i++] = field.getName();
+        return NAME_MAPPINGS.computeIfAbsent(pojoClass, CsvWriter::scalarFieldNames).clone();
+    }
+
+    private static String[] scalarFieldNames(Class<?> pojoClass) {
+        List<String> nm = new ArrayList<>();
+        for (Field field : pojoClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()
+                    || field.getName().startsWith("_persistence_")
+                    || Collection.class.isAssignableFrom(field.getType())) {
+                continue;
+            }
+            nm.add(field.getName());
         }
-        return nm;
+        return nm.toArray(new String[0]);
     }
 
     /**
@@ -134,11 +270,25 @@ public class CsvWriter<T> {
         return csvHeader;
     }
 
+    /**
+     * creates the csv header from the headers of the columns
+     * @return csv header of type String array
+     */
+    private static <T> String[] getColumnHeader(List<CsvColumn<T>> columns) {
+        String[] csvHeader = new String[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            csvHeader[i] = columns.get(i).getHeader();
+        }
+        return csvHeader;
+    }
+
     public static class Builder<T> {
         private PrintWriter printWriter;
         private String[] csvHeader;
         private List<T> data;
         private String[] nameMapping;
+        private List<CsvColumn<T>> columns;
+        private Class<T> compiledType;
 
         public Builder<T> setPrintWriter(PrintWriter printWriter) throws WriteToCsvException {
             this.printWriter = printWriter;
@@ -164,6 +314,24 @@ public class CsvWriter<T> {
             return this;
         }
 
+        /**
+         * writes the rows of the name mapping through the getters of [pojoClass] compiled once into a
+         * [CsvRowWriter], instead of the reflection of the [CsvBeanWriter]
+         */
+        public Builder<T> setCompiledType(Class<T> pojoClass) {
+            this.compiledType = pojoClass;
+            return this;
+        }
+
+        /**
+         * writes the rows through the given columns instead of the bean properties of the name mapping,
+         * the column headers are used unless a header is set
+         */
+        public Builder<T> setColumns(List<CsvColumn<T>> columns) {
+            this.columns = columns;
+            return this;
+        }
+
         public CsvWriter<T> build() throws CsvWriterException {
             if(printWriter == null) {
                 throw new CsvWriterException(ErrorCode.CSV_BUILDER,"Print writer can't be null");
@@ -180,7 +348,29 @@ public class CsvWriter<T> {
             if(csvHeader == null) {
                 this.csvHeader = getCsvHeader(nameMapping);
             }
-            return new CsvWriter<>(printWriter, csvHeader, data, nameMapping);
+            return new CsvWriter<>(printWriter, csvHeader, data, nameMapping, null, compile(nameMapping));
+        }
+
+        /**
+         * builds the writer for streaming rows one by one with [writeRow], no data list is required
+         * but the name mapping or the columns have to be set
+         */
+        public CsvWriter<T> buildStreaming() throws CsvWriterException {
+            if(printWriter == null) {
+                throw new CsvWriterException(ErrorCode.CSV_BUILDER,"Print writer can't be null");
+            }
+            if(nameMapping == null && columns == null) {
+                throw new CsvWriterException(ErrorCode.CSV_BUILDER,"Name mapping can't be null");
+            }
+            if(csvHeader == null) {
+                this.csvHeader = columns == null ? getCsvHeader(nameMapping) : getColumnHeader(columns);
+            }
+            return new CsvWriter<>(printWriter, csvHeader, null, nameMapping, columns,
+                    columns == null ? compile(nameMapping) : null);
+        }
+
+        private CsvRowWriter<T> compile(String[] nameMapping) throws CsvWriterException {
+            return compiledType == null ? null : CsvRowWriter.compile(compiledType, nameMapping);
         }
 
     }
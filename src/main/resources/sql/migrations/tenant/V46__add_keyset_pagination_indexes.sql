@@ -0,0 +1,3 @@
+CREATE INDEX `idx_transfers_started_at_id` ON `transfers` (`STARTED_AT`, `ID`);
+
+CREATE INDEX `idx_transaction_requests_started_at_id` ON `transaction_requests` (`STARTED_AT`, `ID`);
@@ -0,0 +1 @@
+CREATE INDEX `idx_transfers_batch_id` ON `transfers` (`BATCH_ID`);
@@ -0,0 +1,3 @@
+ALTER TABLE `batches`
+    ADD COLUMN `LAST_TRANSFER_ID` BIGINT(20) DEFAULT NULL,
+    ADD COLUMN `LAST_COMPLETED_AT` DATETIME DEFAULT NULL;
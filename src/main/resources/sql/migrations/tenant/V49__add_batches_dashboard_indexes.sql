@@ -0,0 +1,5 @@
+CREATE INDEX `idx_batches_sub_batch_id_started_at` ON `batches` (`SUB_BATCH_ID`, `STARTED_AT`);
+
+CREATE INDEX `idx_batches_institution_sub_batch_id_started_at` ON `batches` (`REGISTERING_INSTITUTION_ID`, `SUB_BATCH_ID`, `STARTED_AT`);
+
+CREATE INDEX `idx_batches_batch_id_sub_batch_id` ON `batches` (`BATCH_ID`, `SUB_BATCH_ID`);
@@ -0,0 +1,13 @@
+CREATE TABLE `export_jobs` (
+   `ID` bigint(20) NOT NULL AUTO_INCREMENT,
+   `JOB_ID` varchar(36) NOT NULL,
+   `STATUS` varchar(20) NOT NULL,
+   `CREATED_AT` datetime DEFAULT NULL,
+   `STARTED_AT` datetime DEFAULT NULL,
+   `COMPLETED_AT` datetime DEFAULT NULL,
+   `ROW_COUNT` bigint(20) DEFAULT NULL,
+   `FILE_NAME` varchar(512) DEFAULT NULL,
+   `ERROR_MESSAGE` varchar(1024) DEFAULT NULL,
+   PRIMARY KEY (`ID`),
+   UNIQUE KEY `uk_export_jobs_job_id` (`JOB_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
@@ -0,0 +1,27 @@
+ALTER TABLE `transaction_requests`
+    ADD COLUMN `ERROR_DESCRIPTION` varchar(1000) DEFAULT NULL,
+    ADD KEY `idx_transaction_requests_error_description` (`ERROR_DESCRIPTION`(255));
+
+ALTER TABLE `transfers`
+    ADD COLUMN `ERROR_DESCRIPTION` varchar(1000) DEFAULT NULL,
+    ADD KEY `idx_transfers_error_description` (`ERROR_DESCRIPTION`(255));
+
+CREATE TABLE `watermarks` (
+   `ID` bigint(20) NOT NULL AUTO_INCREMENT,
+   `NAME` varchar(64) NOT NULL,
+   `LAST_ID` bigint(20) NOT NULL,
+   PRIMARY KEY (`ID`),
+   UNIQUE KEY `uk_watermarks_name` (`NAME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+UPDATE `transaction_requests` tr
+    JOIN `variables` v ON v.`WORKFLOW_INSTANCE_KEY` = tr.`WORKFLOW_INSTANCE_KEY` AND v.`NAME` = 'errorDescription'
+    SET tr.`ERROR_DESCRIPTION` = LEFT(TRIM(BOTH '"' FROM v.`VALUE`), 1000);
+
+UPDATE `transfers` t
+    JOIN `variables` v ON v.`WORKFLOW_INSTANCE_KEY` = t.`WORKFLOW_INSTANCE_KEY` AND v.`NAME` = 'errorDescription'
+    SET t.`ERROR_DESCRIPTION` = LEFT(TRIM(BOTH '"' FROM v.`VALUE`), 1000);
+
+INSERT INTO `watermarks` (`NAME`, `LAST_ID`) SELECT 'errorDescription.variables', COALESCE(MAX(`ID`), 0) FROM `variables`;
+INSERT INTO `watermarks` (`NAME`, `LAST_ID`) SELECT 'errorDescription.transactionRequests', COALESCE(MAX(`ID`), 0) FROM `transaction_requests`;
+INSERT INTO `watermarks` (`NAME`, `LAST_ID`) SELECT 'errorDescription.transfers', COALESCE(MAX(`ID`), 0) FROM `transfers`;
@@ -0,0 +1,7 @@
+ALTER TABLE `tasks`
+    ADD KEY `idx_tasks_key_timestamp` (`WORKFLOW_INSTANCE_KEY`, `TIMESTAMP`),
+    DROP KEY `idx_tasks_key`;
+
+ALTER TABLE `variables`
+    ADD KEY `idx_variables_key_timestamp` (`WORKFLOW_INSTANCE_KEY`, `TIMESTAMP`),
+    DROP KEY `idx_variables_key`;
@@ -0,0 +1 @@
+CREATE INDEX `idx_variables_key_name` ON `variables` (`WORKFLOW_INSTANCE_KEY`, `NAME`);
@@ -0,0 +1,2 @@
+ALTER TABLE `batches`
+    ADD COLUMN `PAYEE_FSPS` varchar(1024) DEFAULT NULL;
@@ -0,0 +1,3 @@
+ALTER TABLE `transfers`
+    ADD KEY `idx_transfers_batch_id_transaction_id` (`BATCH_ID`, `TRANSACTION_ID`),
+    DROP KEY `idx_transfers_batch_id`;
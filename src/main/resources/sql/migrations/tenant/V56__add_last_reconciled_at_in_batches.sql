@@ -0,0 +1,2 @@
+ALTER TABLE `batches`
+    ADD COLUMN `LAST_RECONCILED_AT` DATETIME DEFAULT NULL;
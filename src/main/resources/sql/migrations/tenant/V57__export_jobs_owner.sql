@@ -0,0 +1,3 @@
+ALTER TABLE `export_jobs`
+    ADD COLUMN `OWNER` varchar(255) DEFAULT NULL,
+    ADD INDEX `idx_export_jobs_status` (`STATUS`);
@@ -0,0 +1,6 @@
+ALTER TABLE `batches`
+    ADD COLUMN `TOTAL_CHANGED_AT` DATETIME DEFAULT NULL,
+    ADD COLUMN `REFRESH_LEASE_OWNER` varchar(36) DEFAULT NULL,
+    ADD COLUMN `REFRESH_LEASE_UNTIL` DATETIME DEFAULT NULL;
+
+UPDATE `batches` SET `TOTAL_CHANGED_AT` = `RESULT_GENERATED_AT`;
@@ -0,0 +1,8 @@
+ALTER TABLE `transfers`
+    ADD KEY `idx_transfers_batch_id_id` (`BATCH_ID`, `ID`),
+    ADD KEY `idx_transfers_batch_id_payee_party_id` (`BATCH_ID`, `PAYEE_PARTY_ID`),
+    ADD KEY `idx_transfers_batch_id_payer_dfsp_id` (`BATCH_ID`, `PAYER_DFSP_ID`),
+    ADD KEY `idx_transfers_batch_id_amount` (`BATCH_ID`, `amount`),
+    ADD KEY `idx_transfers_batch_id_status` (`BATCH_ID`, `STATUS`),
+    ADD KEY `idx_transfers_batch_id_started_at` (`BATCH_ID`, `STARTED_AT`),
+    ADD KEY `idx_transfers_batch_id_completed_at` (`BATCH_ID`, `COMPLETED_AT`);
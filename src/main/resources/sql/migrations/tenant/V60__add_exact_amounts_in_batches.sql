@@ -0,0 +1,5 @@
+ALTER TABLE `batches`
+    ADD COLUMN `TOTAL_AMOUNT_EXACT` DECIMAL(38,4) DEFAULT NULL,
+    ADD COLUMN `ONGOING_AMOUNT_EXACT` DECIMAL(38,4) DEFAULT NULL,
+    ADD COLUMN `FAILED_AMOUNT_EXACT` DECIMAL(38,4) DEFAULT NULL,
+    ADD COLUMN `COMPLETED_AMOUNT_EXACT` DECIMAL(38,4) DEFAULT NULL;
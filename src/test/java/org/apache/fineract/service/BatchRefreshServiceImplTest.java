@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.service;
+
+import org.apache.fineract.operations.Batch;
+import org.apache.fineract.operations.BatchStatus;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRefreshServiceImplTest {
+
+    private static final long SETTLE_MS = 120000L;
+
+    private static final long EMPTY_SETTLE_MS = 3600000L;
+
+    @Test
+    public void batchWithoutTransferIsInProgressUntilSettled() {
+        assertEquals(BatchStatus.IN_PROGRESS, BatchRefreshServiceImpl.status(0, 0, 0, 0, false));
+        assertEquals(BatchStatus.FAILED, BatchRefreshServiceImpl.status(0, 0, 0, 0, true));
+    }
+
+    @Test
+    public void batchWithOngoingTransfersIsInProgress() {
+        assertEquals(BatchStatus.IN_PROGRESS, BatchRefreshServiceImpl.status(5, 1, 0, 6, true));
+    }
+
+    @Test
+    public void batchStillImportedIsInProgress() {
+        assertEquals(BatchStatus.IN_PROGRESS, BatchRefreshServiceImpl.status(6, 0, 0, 6, false));
+    }
+
+    @Test
+    public void settledBatchIsTerminal() {
+        assertEquals(BatchStatus.COMPLETED, BatchRefreshServiceImpl.status(6, 0, 0, 6, true));
+        assertEquals(BatchStatus.FAILED, BatchRefreshServiceImpl.status(4, 0, 2, 6, true));
+    }
+
+    @Test
+    public void batchNeverRefreshedIsNotSettled() {
+        assertFalse(BatchRefreshServiceImpl.isSettled(new Batch(), new Date(), SETTLE_MS, EMPTY_SETTLE_MS));
+    }
+
+    @Test
+    public void batchIsSettledOnceItsTransfersStopChanging() {
+        Batch batch = new Batch();
+        batch.setTotalTransactions(6L);
+        batch.setTotalChangedAt(new Date());
+        Date changedAt = batch.getTotalChangedAt();
+
+        assertFalse(BatchRefreshServiceImpl.isSettled(batch, new Date(changedAt.getTime() + SETTLE_MS - 1),
+                SETTLE_MS, EMPTY_SETTLE_MS));
+        assertTrue(BatchRefreshServiceImpl.isSettled(batch, new Date(changedAt.getTime() + SETTLE_MS),
+                SETTLE_MS, EMPTY_SETTLE_MS));
+    }
+
+    @Test
+    public void batchWithoutTransferSettlesAfterTheEmptyWindow() {
+        Batch batch = new Batch();
+        batch.setTotalTransactions(0L);
+        batch.setTotalChangedAt(new Date());
+        Date changedAt = batch.getTotalChangedAt();
+
+        assertFalse(BatchRefreshServiceImpl.isSettled(batch, new Date(changedAt.getTime() + SETTLE_MS),
+                SETTLE_MS, EMPTY_SETTLE_MS));
+        assertTrue(BatchRefreshServiceImpl.isSettled(batch, new Date(changedAt.getTime() + EMPTY_SETTLE_MS),
+                SETTLE_MS, EMPTY_SETTLE_MS));
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.service;
+
+import org.apache.fineract.operations.Batch;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchSummaryServiceImplTest {
+
+    private static final long RECONCILE_INTERVAL_MS = 600000L;
+
+    @Test
+    public void newTransfersAreAddedToTheCounters() {
+        Batch batch = reconciledBatch();
+        BatchSummaryServiceImpl.SummaryDelta delta = new BatchSummaryServiceImpl.SummaryDelta();
+        delta.addTransfers(newTransfersRow(3, "30.00", 1, "10.00", 1, "10.00", 1, "10.00"));
+        delta.applyTo(batch);
+
+        assertCounters(batch, 13, 130, 6, 60, 3, 30, 4, 40);
+    }
+
+    @Test
+    public void completionsLeaveTheOngoingCounters() {
+        Batch batch = reconciledBatch();
+        BatchSummaryServiceImpl.SummaryDelta delta = new BatchSummaryServiceImpl.SummaryDelta();
+        delta.addCompletions(completionsRow(2, "20.00", 1, "10.00", 3, "30.00"));
+        delta.applyTo(batch);
+
+        assertCounters(batch, 10, 100, 7, 70, 3, 30, 0, 0);
+    }
+
+    @Test
+    public void amountsAreTruncatedOncePerRefresh() {
+        Batch batch = reconciledBatch();
+        BatchSummaryServiceImpl.SummaryDelta delta = new BatchSummaryServiceImpl.SummaryDelta();
+        for (int i = 0; i < 3; i++) {
+            delta.addTransfers(newTransfersRow(1, "0.40", 1, "0.40", 0, "0", 0, "0"));
+        }
+        delta.applyTo(batch);
+
+        assertEquals(Long.valueOf(101), batch.getTotalAmount());
+        assertEquals(Long.valueOf(51), batch.getCompletedAmount());
+    }
+
+    @Test
+    public void amountsDoNotDriftAcrossRefreshes() {
+        Batch batch = reconciledBatch();
+        for (int i = 0; i < 3; i++) {
+            BatchSummaryServiceImpl.SummaryDelta delta = new BatchSummaryServiceImpl.SummaryDelta();
+            delta.addTransfers(newTransfersRow(1, "0.40", 0, "0", 0, "0", 1, "0.40"));
+            delta.applyTo(batch);
+        }
+        BatchSummaryServiceImpl.SummaryDelta delta = new BatchSummaryServiceImpl.SummaryDelta();
+        delta.addCompletions(completionsRow(3, "1.20", 0, "0", 3, "1.20"));
+        delta.applyTo(batch);
+
+        assertEquals(new BigDecimal("101.20"), batch.getTotalAmountExact());
+        assertCounters(batch, 13, 101, 8, 51, 2, 20, 3, 30);
+    }
+
+    @Test
+    public void reconcileFromResetCountersIsIdempotent() {
+        Batch batch = reconciledBatch();
+        for (int i = 0; i < 2; i++) {
+            BatchSummaryServiceImpl.resetCounters(batch);
+            BatchSummaryServiceImpl.SummaryDelta delta = new BatchSummaryServiceImpl.SummaryDelta();
+            delta.addTransfers(newTransfersRow(4, "40.50", 2, "20.25", 1, "10.25", 1, "10.00"));
+            delta.addTransfers(newTransfersRow(1, "10.50", 1, "10.50", 0, "0", 0, "0"));
+            delta.applyTo(batch);
+        }
+
+        assertCounters(batch, 5, 51, 3, 30, 1, 10, 1, 10);
+    }
+
+    @Test
+    public void batchWithoutWatermarkIsReconciled() {
+        Batch batch = reconciledBatch();
+        batch.setLastTransferId(null);
+
+        assertTrue(BatchSummaryServiceImpl.needsReconcile(batch, new Date(), RECONCILE_INTERVAL_MS));
+    }
+
+    @Test
+    public void batchNeverReconciledIsReconciled() {
+        Batch batch = reconciledBatch();
+        batch.setLastReconciledAt(null);
+
+        assertTrue(BatchSummaryServiceImpl.needsReconcile(batch, new Date(), RECONCILE_INTERVAL_MS));
+    }
+
+    @Test
+    public void batchIsReconciledOnceTheIntervalElapsed() {
+        Batch batch = reconciledBatch();
+        Date reconciledAt = batch.getLastReconciledAt();
+
+        assertFalse(BatchSummaryServiceImpl.needsReconcile(batch,
+                new Date(reconciledAt.getTime() + RECONCILE_INTERVAL_MS - 1), RECONCILE_INTERVAL_MS));
+        assertTrue(BatchSummaryServiceImpl.needsReconcile(batch,
+                new Date(reconciledAt.getTime() + RECONCILE_INTERVAL_MS), RECONCILE_INTERVAL_MS));
+    }
+
+    @Test
+    public void firstRefreshOfAnUnchangedTotalStartsTheSettleTime() {
+        Batch batch = reconciledBatch();
+        Date now = new Date();
+        BatchSummaryServiceImpl.markTotalChanged(batch, batch.getTotalTransactions(), now);
+
+        assertEquals(now, batch.getTotalChangedAt());
+    }
+
+    @Test
+    public void unchangedTotalKeepsTheSettleTime() {
+        Batch batch = reconciledBatch();
+        Date changedAt = new Date(0);
+        batch.setTotalChangedAt(changedAt);
+        BatchSummaryServiceImpl.markTotalChanged(batch, batch.getTotalTransactions(), new Date());
+
+        assertEquals(changedAt, batch.getTotalChangedAt());
+    }
+
+    @Test
+    public void changedTotalRestartsTheSettleTime() {
+        Batch batch = reconciledBatch();
+        batch.setTotalChangedAt(new Date(0));
+        Date now = new Date();
+        BatchSummaryServiceImpl.markTotalChanged(batch, batch.getTotalTransactions() - 1, now);
+
+        assertEquals(now, batch.getTotalChangedAt());
+    }
+
+    /*
+     * 10 transfers of 10: 5 completed, 2 failed and 3 ongoing
+     */
+    private static Batch reconciledBatch() {
+        Batch batch = new Batch();
+        batch.setId(1L);
+        batch.setTotalTransactions(10L);
+        batch.setTotalAmount(100L);
+        batch.setCompleted(5L);
+        batch.setCompletedAmount(50L);
+        batch.setFailed(2L);
+        batch.setFailedAmount(20L);
+        batch.setOngoing(3L);
+        batch.setOngoingAmount(30L);
+        batch.setLastTransferId(100L);
+        batch.setLastReconciledAt(new Date());
+        return batch;
+    }
+
+    private static Object[] newTransfersRow(long total, String totalAmount, long completed, String completedAmount,
+                                            long failed, String failedAmount, long ongoing, String ongoingAmount) {
+        return new Object[]{1L, null, total, new BigDecimal(totalAmount), completed, new BigDecimal(completedAmount),
+                failed, new BigDecimal(failedAmount), ongoing, new BigDecimal(ongoingAmount), 200L};
+    }
+
+    private static Object[] completionsRow(long completed, String completedAmount, long failed, String failedAmount,
+                                           long total, String totalAmount) {
+        return new Object[]{1L, null, completed, new BigDecimal(completedAmount), failed, new BigDecimal(failedAmount),
+                total, new BigDecimal(totalAmount)};
+    }
+
+    private static void assertCounters(Batch batch, long total, long totalAmount, long completed, long completedAmount,
+                                       long failed, long failedAmount, long ongoing, long ongoingAmount) {
+        assertEquals(Long.valueOf(total), batch.getTotalTransactions());
+        assertEquals(Long.valueOf(totalAmount), batch.getTotalAmount());
+        assertEquals(Long.valueOf(completed), batch.getCompleted());
+        assertEquals(Long.valueOf(completedAmount), batch.getCompletedAmount());
+        assertEquals(Long.valueOf(failed), batch.getFailed());
+        assertEquals(Long.valueOf(failedAmount), batch.getFailedAmount());
+        assertEquals(Long.valueOf(ongoing), batch.getOngoing());
+        assertEquals(Long.valueOf(ongoingAmount), batch.getOngoingAmount());
+    }
+}